@@ -11,7 +11,11 @@ import lombok.Getter;
 @Getter
 public enum CompressTypeEnum {
 
-    GZIP((byte) 0x01, "gzip");
+    NONE((byte) 0x00, "none"),
+    GZIP((byte) 0x01, "gzip"),
+    LZ4((byte) 0x02, "lz4"),
+    SNAPPY((byte) 0x03, "snappy"),
+    ZSTD((byte) 0x04, "zstd");
 
     private final byte code;
     private final String name;
@@ -25,4 +29,13 @@ public enum CompressTypeEnum {
         return null;
     }
 
+    public static CompressTypeEnum getByName(String name) {
+        for (CompressTypeEnum c : CompressTypeEnum.values()) {
+            if (c.name.equalsIgnoreCase(name)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
 }
@@ -15,6 +15,9 @@ public enum LoadBalanceEnum {
     RANDOM("random"),
     WEIGHTED_RANDOM("weightedRandom"),
     WEIGHTED_ROUND_ROBIN("weightedRoundRobin"),
+    LEAST_ACTIVE("leastActive"),
+    P2C("p2c"),
+    PEAK_EWMA("peakEwma"),
     LEGACY("loadBalance");
 
     private final String name;
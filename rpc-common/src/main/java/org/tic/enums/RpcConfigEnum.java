@@ -13,7 +13,10 @@ public enum RpcConfigEnum {
 
     RPC_CONFIG_PATH("rpc.properties"),
     ZK_ADDRESS("rpc.zookeeper.address"),
-    ZK_CACHE_TTL_MS("rpc.zk.cache.ttl.ms"),
+    /**
+     * How long the first lookup of a service waits for its instances to load from zookeeper, default 3000ms
+     */
+    ZK_DISCOVERY_INIT_TIMEOUT_MS("rpc.zk.discovery.init.timeout.ms"),
     INSTANCE_WEIGHT("rpc.instance.weight"),
     /**
      * Enable configuration resolution logging, default true
@@ -26,14 +29,30 @@ public enum RpcConfigEnum {
     SERVER_BIZ_KEEP_ALIVE_MS("rpc.server.biz.keepalive.ms"),
     SERVER_BIZ_QUEUE_CAPACITY("rpc.server.biz.queue.capacity"),
     SERVER_BIZ_REJECT_POLICY("rpc.server.biz.reject.policy"),
+    /**
+     * Business executor mode: pool (bounded platform thread pool) or virtual (one virtual thread per request), default pool
+     */
+    SERVER_BIZ_MODE("rpc.server.biz.mode"),
     SERVER_MAX_CONCURRENT_REQUESTS("rpc.server.max.concurrent"),
     SERVER_BACKPRESSURE_QUEUE_THRESHOLD("rpc.server.backpressure.queue.threshold"),
     SERVER_DRAIN_TIMEOUT_MS("rpc.server.drain.timeout.ms"),
     LOAD_BALANCE_STRATEGY("rpc.loadbalance.strategy"),
+    /**
+     * How fast the peak EWMA latency of an instance forgets old samples, default 10000ms
+     */
+    LOAD_BALANCE_EWMA_DECAY_MS("rpc.loadbalance.ewma.decay.ms"),
     HASH_KEY_STRATEGY("rpc.hash.key.strategy"),
     CLIENT_CB_FAILURE_THRESHOLD("rpc.client.circuit.failure.threshold"),
     CLIENT_CB_OPEN_MS("rpc.client.circuit.open.ms"),
     CLIENT_CB_HALF_OPEN_MAX("rpc.client.circuit.halfopen.max"),
+    /**
+     * Window over which the success rate and latency of every instance are measured, default 10000ms
+     */
+    CLIENT_HEALTH_WINDOW_MS("rpc.client.health.window.ms"),
+    /**
+     * Responses an instance needs in the window before its weight follows them, default 20
+     */
+    CLIENT_HEALTH_MIN_SAMPLES("rpc.client.health.min.samples"),
     /**
      * RPC request timeout in milliseconds, default 30000ms
      */
@@ -45,7 +64,125 @@ public enum RpcConfigEnum {
     /**
      * Connection retry base interval in milliseconds, default 1000ms
      */
-    RPC_CONNECT_RETRY_INTERVAL_MS("rpc.connect.retry.interval.ms");
+    RPC_CONNECT_RETRY_INTERVAL_MS("rpc.connect.retry.interval.ms"),
+    /**
+     * Encode/decode message bodies directly against ByteBufs, default false
+     */
+    CODEC_ZERO_COPY("rpc.codec.zero.copy"),
+    /**
+     * Default serialization for client requests (kryo|protostuff|hessian), default kryo
+     */
+    SERIALIZATION("rpc.serialization"),
+    /**
+     * Preferred compression for message bodies (none|gzip|lz4|snappy|zstd), default gzip
+     */
+    COMPRESS("rpc.compress"),
+    /**
+     * Bodies smaller than this many bytes are sent uncompressed, default 1024
+     */
+    COMPRESS_MIN_BYTES("rpc.compress.min.bytes"),
+    /**
+     * Zstd compression level, default 1
+     */
+    COMPRESS_ZSTD_LEVEL("rpc.compress.zstd.level"),
+    /**
+     * Path (file system or classpath) of a trained zstd dictionary, must be the same on both peers
+     */
+    COMPRESS_ZSTD_DICT("rpc.compress.zstd.dict"),
+    /**
+     * Threads completing the futures of async (CompletableFuture returning) calls, default 0 = complete on the netty event loop
+     */
+    CLIENT_CALLBACK_THREADS("rpc.client.callback.threads"),
+    /**
+     * Client proxy implementation (jdk|bytecode), default jdk = java.lang.reflect.Proxy, bytecode = generated stub classes
+     */
+    CLIENT_PROXY("rpc.client.proxy"),
+    /**
+     * Coalesce the writes of a channel issued within one event loop tick into a single flush, default true
+     */
+    FLUSH_BATCH_ENABLED("rpc.flush.batch.enabled"),
+    /**
+     * Most messages written before a batch is flushed, default 128
+     */
+    FLUSH_BATCH_MAX_MESSAGES("rpc.flush.batch.max.messages"),
+    /**
+     * Most encoded bytes written before a batch is flushed, default 65536
+     */
+    FLUSH_BATCH_MAX_BYTES("rpc.flush.batch.max.bytes"),
+    /**
+     * Connections the client keeps to each server address, default 1
+     */
+    CLIENT_CONNECTIONS_PER_ENDPOINT("rpc.client.connections.per.endpoint"),
+    /**
+     * How a request picks one of the connections to an address (leastPending|roundRobin), default leastPending
+     */
+    CLIENT_CONNECTION_SELECT("rpc.client.connection.select"),
+    /**
+     * Most requests in flight on one connection, default 0 = no cap
+     */
+    CLIENT_CONNECTION_MAX_PENDING("rpc.client.connection.max.pending"),
+    /**
+     * Connect to service instances as soon as discovery reports them, default true
+     */
+    CLIENT_WARMUP_ENABLED("rpc.client.warmup.enabled"),
+    /**
+     * Netty transport of client and server (auto|epoll|nio), default auto = epoll when available, NIO otherwise
+     */
+    TRANSPORT("rpc.transport"),
+    /**
+     * Enable TCP fast open on the epoll transport, default true
+     */
+    TRANSPORT_TCP_FASTOPEN("rpc.transport.tcp.fastopen"),
+    /**
+     * Bind one SO_REUSEPORT listening socket per boss thread on the epoll transport, default true
+     */
+    SERVER_REUSEPORT("rpc.server.reuseport"),
+    /**
+     * Buffer allocator of client and server channels (pooled|unpooled), default pooled
+     */
+    TRANSPORT_ALLOCATOR("rpc.transport.allocator"),
+    /**
+     * Netty leak detection level (disabled|simple|advanced|paranoid), default netty's own setting
+     */
+    TRANSPORT_LEAK_DETECTION("rpc.transport.leak.detection"),
+    /**
+     * Bounds and start size of the adaptive receive buffer in bytes, default 64/2048/65536
+     */
+    TRANSPORT_RCVBUF_MIN("rpc.transport.rcvbuf.min"),
+    TRANSPORT_RCVBUF_INITIAL("rpc.transport.rcvbuf.initial"),
+    TRANSPORT_RCVBUF_MAX("rpc.transport.rcvbuf.max"),
+    /**
+     * Outbound bytes pending on a channel at which it becomes unwritable (high) and writable again (low), default 65536/32768
+     */
+    TRANSPORT_WRITE_BUFFER_HIGH("rpc.transport.write.buffer.high"),
+    TRANSPORT_WRITE_BUFFER_LOW("rpc.transport.write.buffer.low"),
+    /**
+     * Socket send/receive buffer sizes in bytes, default 0 = kernel default
+     */
+    TRANSPORT_SO_SNDBUF("rpc.transport.so.sndbuf"),
+    TRANSPORT_SO_RCVBUF("rpc.transport.so.rcvbuf"),
+    /**
+     * Log transport and codec metrics every this many ms, default 0 = only once when the server shuts down
+     */
+    TRANSPORT_METRICS_LOG_INTERVAL_MS("rpc.transport.metrics.log.interval.ms"),
+    /**
+     * Limit each service method's concurrency adaptively from its latency, default true
+     */
+    SERVER_LIMITER_ADAPTIVE("rpc.server.limiter.adaptive"),
+    /**
+     * Lowest, starting and highest adaptive concurrency limit of a method, default 2/20/1000
+     */
+    SERVER_LIMITER_MIN("rpc.server.limiter.min"),
+    SERVER_LIMITER_INITIAL("rpc.server.limiter.initial"),
+    SERVER_LIMITER_MAX("rpc.server.limiter.max"),
+    /**
+     * Run {@code @NonBlocking} service methods on the IO thread, default true
+     */
+    SERVER_INLINE_ENABLED("rpc.server.inline.enabled"),
+    /**
+     * Execution time above which an inline method run is counted and reported as slow, default 200 microseconds
+     */
+    SERVER_INLINE_BUDGET_MICROS("rpc.server.inline.budget.micros");
 
     private final String propertyValue;
 
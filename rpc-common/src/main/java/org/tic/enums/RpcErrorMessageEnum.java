@@ -15,6 +15,7 @@ public enum RpcErrorMessageEnum {
     CLIENT_CONNECT_SERVER_FAILURE("Client failed to connect to server"),
     SERVICE_INVOCATION_FAILURE("Service invocation failed"),
     SERVICE_CAN_NOT_BE_FOUND("Specified service not found"),
+    SERVICE_OVERLOADED("Service overloaded"),
     SERVICE_NOT_IMPLEMENT_ANY_INTERFACE("Registered service does not implement any interface"),
     REQUEST_NOT_MATCH_RESPONSE("Incorrect result! Request and response do not match");
 
@@ -27,4 +27,13 @@ public enum SerializationTypeEnum {
         return null;
     }
 
+    public static SerializationTypeEnum getByName(String name) {
+        for (SerializationTypeEnum c : SerializationTypeEnum.values()) {
+            if (c.name.equalsIgnoreCase(name)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
 }
\ No newline at end of file
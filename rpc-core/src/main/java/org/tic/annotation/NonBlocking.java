@@ -0,0 +1,14 @@
+package org.tic.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a service method that neither blocks nor runs long, so the server executes it directly on the IO thread
+ * that read the request instead of handing it to the business thread pool.
+ * It can be put on the method of the service interface or of its implementation.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface NonBlocking {
+}
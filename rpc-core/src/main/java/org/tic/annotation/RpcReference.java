@@ -22,4 +22,9 @@ public @interface RpcReference {
      */
     String group() default "";
 
+    /**
+     * Serialization name (kryo|protostuff|hessian), default value is empty string which means rpc.serialization
+     */
+    String serialization() default "";
+
 }
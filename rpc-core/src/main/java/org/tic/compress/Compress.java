@@ -1,6 +1,9 @@
 package org.tic.compress;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import org.tic.extension.SPI;
+import org.tic.utils.CodecMetrics;
 
 /**
  * @author codesssss
@@ -13,4 +16,39 @@ public interface Compress {
 
 
     byte[] decompress(byte[] bytes);
+
+    /**
+     * Compress the readable bytes of {@code in} and append the result to {@code out}.
+     * <p>
+     * The default implementation falls back to the byte[] methods and therefore copies through the heap;
+     * implementations should override it to stream between the buffers directly.
+     * </p>
+     *
+     * @param in  source buffer, its reader index is advanced past the consumed bytes
+     * @param out target buffer
+     */
+    default void compress(ByteBuf in, ByteBuf out) {
+        byte[] bytes = ByteBufUtil.getBytes(in);
+        in.skipBytes(bytes.length);
+        byte[] compressed = compress(bytes);
+        out.writeBytes(compressed);
+        CodecMetrics.recordHeapCopy(bytes.length);
+        CodecMetrics.recordHeapCopy(compressed.length);
+    }
+
+    /**
+     * Decompress the readable bytes of {@code in} and append the result to {@code out}.
+     *
+     * @param in  source buffer, its reader index is advanced past the consumed bytes
+     * @param out target buffer
+     * @see #compress(ByteBuf, ByteBuf)
+     */
+    default void decompress(ByteBuf in, ByteBuf out) {
+        byte[] bytes = ByteBufUtil.getBytes(in);
+        in.skipBytes(bytes.length);
+        byte[] decompressed = decompress(bytes);
+        out.writeBytes(decompressed);
+        CodecMetrics.recordHeapCopy(bytes.length);
+        CodecMetrics.recordHeapCopy(decompressed.length);
+    }
 }
@@ -1,5 +1,8 @@
 package org.tic.compress.gzip;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import org.tic.compress.Compress;
 
 import java.io.ByteArrayInputStream;
@@ -50,5 +53,32 @@ public class GzipCompress implements Compress {
             throw new RuntimeException("gzip decompress error", e);
         }
     }
-}
 
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        if (in == null || out == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        // deflate straight into the target buffer, no intermediate byte[] for the whole body
+        try (GZIPOutputStream gzip = new GZIPOutputStream(new ByteBufOutputStream(out), BUFFER_SIZE)) {
+            in.readBytes(gzip, in.readableBytes());
+            gzip.finish();
+        } catch (IOException e) {
+            throw new RuntimeException("gzip compress error", e);
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out) {
+        if (in == null || out == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        try (GZIPInputStream gunzip = new GZIPInputStream(new ByteBufInputStream(in), BUFFER_SIZE)) {
+            while (out.writeBytes(gunzip, BUFFER_SIZE) > -1) {
+                // keep inflating until the gzip stream is exhausted
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("gzip decompress error", e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.tic.compress.lz4;
+
+import io.netty.buffer.ByteBuf;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.tic.compress.Compress;
+import org.tic.remoting.constants.RpcConstants;
+
+import java.nio.ByteBuffer;
+
+/**
+ * LZ4 block compression. The body is laid out as a 4 byte original length followed by the LZ4 block.
+ * <p>
+ * The compressor and decompressor obtained from {@link LZ4Factory} hold no per-call state and are thread safe,
+ * so a single instance of each is shared by every event loop. The safe decompressor is used because the input
+ * comes off the network, and the original length in the body is checked against the frame limit before anything
+ * is allocated for it.
+ * </p>
+ */
+public class Lz4Compress implements Compress {
+
+    private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+    private static final LZ4Compressor COMPRESSOR = FACTORY.fastCompressor();
+    private static final LZ4SafeDecompressor DECOMPRESSOR = FACTORY.safeDecompressor();
+    private static final int LENGTH_FIELD = 4;
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        int maxLength = COMPRESSOR.maxCompressedLength(bytes.length);
+        byte[] out = new byte[LENGTH_FIELD + maxLength];
+        writeLength(out, bytes.length);
+        int compressedLength = COMPRESSOR.compress(bytes, 0, bytes.length, out, LENGTH_FIELD, maxLength);
+        byte[] result = new byte[LENGTH_FIELD + compressedLength];
+        System.arraycopy(out, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        if (bytes.length < LENGTH_FIELD) {
+            throw new IllegalArgumentException("lz4 body is too short: " + bytes.length);
+        }
+        int originalLength = checkLength(readLength(bytes));
+        byte[] out = new byte[originalLength];
+        int n = DECOMPRESSOR.decompress(bytes, LENGTH_FIELD, bytes.length - LENGTH_FIELD, out, 0, originalLength);
+        if (n != originalLength) {
+            throw new IllegalArgumentException("lz4 body length mismatch, expected " + originalLength + " but was " + n);
+        }
+        return out;
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        if (in == null || out == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        int length = in.readableBytes();
+        int maxLength = COMPRESSOR.maxCompressedLength(length);
+        out.ensureWritable(LENGTH_FIELD + maxLength);
+        if (in.nioBufferCount() != 1 || out.nioBufferCount() != 1) {
+            Compress.super.compress(in, out);
+            return;
+        }
+        out.writeInt(length);
+        ByteBuffer src = in.nioBuffer(in.readerIndex(), length);
+        ByteBuffer dest = out.nioBuffer(out.writerIndex(), maxLength);
+        int compressedLength = COMPRESSOR.compress(src, 0, length, dest, 0, maxLength);
+        in.skipBytes(length);
+        out.writerIndex(out.writerIndex() + compressedLength);
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out) {
+        if (in == null || out == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        if (in.readableBytes() < LENGTH_FIELD) {
+            throw new IllegalArgumentException("lz4 body is too short: " + in.readableBytes());
+        }
+        int originalLength = checkLength(in.getInt(in.readerIndex()));
+        out.ensureWritable(originalLength);
+        if (in.nioBufferCount() != 1 || out.nioBufferCount() != 1) {
+            Compress.super.decompress(in, out);
+            return;
+        }
+        in.skipBytes(LENGTH_FIELD);
+        int compressedLength = in.readableBytes();
+        ByteBuffer src = in.nioBuffer(in.readerIndex(), compressedLength);
+        ByteBuffer dest = out.nioBuffer(out.writerIndex(), originalLength);
+        int n = DECOMPRESSOR.decompress(src, 0, compressedLength, dest, 0, originalLength);
+        if (n != originalLength) {
+            throw new IllegalArgumentException("lz4 body length mismatch, expected " + originalLength + " but was " + n);
+        }
+        in.skipBytes(compressedLength);
+        out.writerIndex(out.writerIndex() + originalLength);
+    }
+
+    private static int checkLength(int originalLength) {
+        if (originalLength < 0 || originalLength > RpcConstants.MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("invalid lz4 original length: " + originalLength);
+        }
+        return originalLength;
+    }
+
+    private static void writeLength(byte[] out, int length) {
+        out[0] = (byte) (length >>> 24);
+        out[1] = (byte) (length >>> 16);
+        out[2] = (byte) (length >>> 8);
+        out[3] = (byte) length;
+    }
+
+    private static int readLength(byte[] in) {
+        return ((in[0] & 0xFF) << 24) | ((in[1] & 0xFF) << 16) | ((in[2] & 0xFF) << 8) | (in[3] & 0xFF);
+    }
+}
@@ -0,0 +1,109 @@
+package org.tic.compress.snappy;
+
+import io.netty.buffer.ByteBuf;
+import org.tic.compress.Compress;
+import org.tic.remoting.constants.RpcConstants;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Raw Snappy block compression backed by the native snappy-java library.
+ * <p>
+ * Snappy keeps no state between calls, so there is nothing to pool. Direct buffers are handed to the native
+ * code as they are; anything else falls back to the byte[] methods.
+ * </p>
+ */
+public class SnappyCompress implements Compress {
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        try {
+            return Snappy.compress(bytes);
+        } catch (IOException e) {
+            throw new RuntimeException("snappy compress error", e);
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        try {
+            byte[] out = new byte[checkLength(Snappy.uncompressedLength(bytes))];
+            Snappy.uncompress(bytes, 0, bytes.length, out, 0);
+            return out;
+        } catch (IOException e) {
+            throw new RuntimeException("snappy decompress error", e);
+        }
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        if (in == null || out == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        int length = in.readableBytes();
+        int maxLength = Snappy.maxCompressedLength(length);
+        out.ensureWritable(maxLength);
+        if (!isDirect(in) || !isDirect(out)) {
+            Compress.super.compress(in, out);
+            return;
+        }
+        try {
+            ByteBuffer src = in.nioBuffer(in.readerIndex(), length);
+            ByteBuffer dest = out.nioBuffer(out.writerIndex(), maxLength);
+            int compressedLength = Snappy.compress(src, dest);
+            in.skipBytes(length);
+            out.writerIndex(out.writerIndex() + compressedLength);
+        } catch (IOException e) {
+            throw new RuntimeException("snappy compress error", e);
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out) {
+        if (in == null || out == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        if (!isDirect(in)) {
+            Compress.super.decompress(in, out);
+            return;
+        }
+        try {
+            int length = in.readableBytes();
+            ByteBuffer src = in.nioBuffer(in.readerIndex(), length);
+            int originalLength = checkLength(Snappy.uncompressedLength(src));
+            out.ensureWritable(originalLength);
+            if (!isDirect(out)) {
+                Compress.super.decompress(in, out);
+                return;
+            }
+            ByteBuffer dest = out.nioBuffer(out.writerIndex(), originalLength);
+            int n = Snappy.uncompress(src, dest);
+            in.skipBytes(length);
+            out.writerIndex(out.writerIndex() + n);
+        } catch (IOException e) {
+            throw new RuntimeException("snappy decompress error", e);
+        }
+    }
+
+    /**
+     * the original length is read from the body, check it before allocating for it
+     */
+    private static int checkLength(int originalLength) {
+        if (originalLength < 0 || originalLength > RpcConstants.MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("invalid snappy original length: " + originalLength);
+        }
+        return originalLength;
+    }
+
+    private static boolean isDirect(ByteBuf buf) {
+        return buf.isDirect() && buf.nioBufferCount() == 1;
+    }
+}
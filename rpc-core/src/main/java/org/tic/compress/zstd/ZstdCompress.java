@@ -0,0 +1,197 @@
+package org.tic.compress.zstd;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+import lombok.extern.slf4j.Slf4j;
+import org.tic.compress.Compress;
+import org.tic.config.ConfigResolver;
+import org.tic.enums.RpcConfigEnum;
+import org.tic.remoting.constants.RpcConstants;
+import org.tic.utils.StringUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+
+/**
+ * Zstd compression with one native compress/decompress context per thread, so the context memory
+ * is allocated once per event loop instead of once per message.
+ * <p>
+ * Small, repetitive DTOs compress much better with a trained dictionary, see {@link #trainDictionary}.
+ * Point {@code rpc.compress.zstd.dict} at the dictionary file on both peers; it is digested once and
+ * shared by all contexts.
+ * </p>
+ */
+@Slf4j
+public class ZstdCompress implements Compress {
+
+    private static final int DEFAULT_LEVEL = 1;
+
+    private final int level;
+    private final ZstdDictCompress dictCompress;
+    private final ZstdDictDecompress dictDecompress;
+
+    private final FastThreadLocal<ZstdCompressCtx> compressCtx = new FastThreadLocal<ZstdCompressCtx>() {
+        @Override
+        protected ZstdCompressCtx initialValue() {
+            ZstdCompressCtx ctx = new ZstdCompressCtx().setLevel(level).setContentSize(true);
+            if (dictCompress != null) {
+                ctx.loadDict(dictCompress);
+            }
+            return ctx;
+        }
+
+        @Override
+        protected void onRemoval(ZstdCompressCtx ctx) {
+            ctx.close();
+        }
+    };
+
+    private final FastThreadLocal<ZstdDecompressCtx> decompressCtx = new FastThreadLocal<ZstdDecompressCtx>() {
+        @Override
+        protected ZstdDecompressCtx initialValue() {
+            ZstdDecompressCtx ctx = new ZstdDecompressCtx();
+            if (dictDecompress != null) {
+                ctx.loadDict(dictDecompress);
+            }
+            return ctx;
+        }
+
+        @Override
+        protected void onRemoval(ZstdDecompressCtx ctx) {
+            ctx.close();
+        }
+    };
+
+    public ZstdCompress() {
+        this.level = ConfigResolver.getInt(RpcConfigEnum.COMPRESS_ZSTD_LEVEL.getPropertyValue(), DEFAULT_LEVEL);
+        byte[] dict = loadDictionary(ConfigResolver.getString(RpcConfigEnum.COMPRESS_ZSTD_DICT.getPropertyValue(), null));
+        if (dict == null) {
+            this.dictCompress = null;
+            this.dictDecompress = null;
+        } else {
+            this.dictCompress = new ZstdDictCompress(dict, level);
+            this.dictDecompress = new ZstdDictDecompress(dict);
+            log.info("Zstd dictionary loaded, size: [{}], level: [{}]", dict.length, level);
+        }
+    }
+
+    /**
+     * Train a dictionary from sample bodies, e.g. serialized DTOs captured from real traffic.
+     * Store the result in a file and reference it with {@code rpc.compress.zstd.dict}.
+     *
+     * @param samples  sample bodies
+     * @param dictSize max dictionary size in bytes, a few KB to ~100KB is typical
+     * @return the trained dictionary
+     */
+    public static byte[] trainDictionary(Collection<byte[]> samples, int dictSize) {
+        byte[] dictBuffer = new byte[dictSize];
+        long size = Zstd.trainFromBuffer(samples.toArray(new byte[0][]), dictBuffer);
+        if (Zstd.isError(size)) {
+            throw new IllegalStateException("zstd dictionary training failed: " + Zstd.getErrorName(size));
+        }
+        byte[] dict = new byte[(int) size];
+        System.arraycopy(dictBuffer, 0, dict, 0, dict.length);
+        return dict;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        return compressCtx.get().compress(bytes);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        return decompressCtx.get().decompress(bytes, checkContentSize(Zstd.getFrameContentSize(bytes)));
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        if (in == null || out == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        int length = in.readableBytes();
+        int maxLength = (int) Zstd.compressBound(length);
+        out.ensureWritable(maxLength);
+        if (!isDirect(in) || !isDirect(out)) {
+            Compress.super.compress(in, out);
+            return;
+        }
+        ByteBuffer src = in.nioBuffer(in.readerIndex(), length);
+        ByteBuffer dest = out.nioBuffer(out.writerIndex(), maxLength);
+        int compressedLength = compressCtx.get().compressDirectByteBuffer(dest, 0, maxLength, src, 0, length);
+        in.skipBytes(length);
+        out.writerIndex(out.writerIndex() + compressedLength);
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out) {
+        if (in == null || out == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        if (!isDirect(in)) {
+            Compress.super.decompress(in, out);
+            return;
+        }
+        int length = in.readableBytes();
+        ByteBuffer src = in.nioBuffer(in.readerIndex(), length);
+        int originalLength = checkContentSize(Zstd.getDirectByteBufferFrameContentSize(src, 0, length));
+        out.ensureWritable(originalLength);
+        if (!isDirect(out)) {
+            Compress.super.decompress(in, out);
+            return;
+        }
+        ByteBuffer dest = out.nioBuffer(out.writerIndex(), originalLength);
+        int n = decompressCtx.get().decompressDirectByteBuffer(dest, 0, originalLength, src, 0, length);
+        in.skipBytes(length);
+        out.writerIndex(out.writerIndex() + n);
+    }
+
+    private static int checkContentSize(long contentSize) {
+        // frames are always written with the content size, anything else is corrupt or foreign input;
+        // a body never decompresses to more than a frame may carry, so a forged size cannot force a huge allocation
+        if (contentSize < 0 || contentSize > RpcConstants.MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("invalid zstd frame content size: " + contentSize);
+        }
+        return (int) contentSize;
+    }
+
+    private static boolean isDirect(ByteBuf buf) {
+        return buf.isDirect() && buf.nioBufferCount() == 1;
+    }
+
+    private static byte[] loadDictionary(String location) {
+        if (StringUtil.isBlank(location)) {
+            return null;
+        }
+        try {
+            Path path = Paths.get(location);
+            if (Files.isRegularFile(path)) {
+                return Files.readAllBytes(path);
+            }
+            try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(location)) {
+                if (in != null) {
+                    return in.readAllBytes();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to read zstd dictionary: " + location, e);
+        }
+        throw new IllegalStateException("zstd dictionary not found: " + location);
+    }
+}
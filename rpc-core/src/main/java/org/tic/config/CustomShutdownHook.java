@@ -1,7 +1,9 @@
 package org.tic.config;
 
+import io.netty.channel.EventLoopGroup;
 import lombok.extern.slf4j.Slf4j;
 import org.tic.registry.zk.utils.CuratorUtils;
+import org.tic.remoting.transport.netty.TransportMetrics;
 import org.tic.remoting.transport.netty.server.NettyRpcServer;
 import org.tic.remoting.transport.netty.server.ServerStateManager;
 import org.tic.utils.threadpoolutils.ThreadPoolFactoryUtil;
@@ -24,7 +26,22 @@ public class CustomShutdownHook {
     }
 
     public void clearAll() {
-        register(null, null, null);
+        register(null, null, null, null, null);
+    }
+
+    /**
+     * Close a resource on shutdown
+     *
+     * @param name what the resource is, for the log
+     */
+    public void register(String name, AutoCloseable resource) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                log.error("Failed to close [{}] on shutdown", name, e);
+            }
+        }));
     }
 
     public void register(ServerStateManager stateManager, InetSocketAddress address, Runnable closeServer, EventLoopGroup bossGroup, EventLoopGroup workerGroup) {
@@ -40,6 +57,7 @@ public class CustomShutdownHook {
                 stateManager.awaitDrain();
                 stateManager.markStopped();
             }
+            TransportMetrics.log();
             try {
                 InetSocketAddress inetSocketAddress = Objects.requireNonNullElseGet(address, () -> {
                     try {
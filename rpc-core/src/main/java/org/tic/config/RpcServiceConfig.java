@@ -21,6 +21,10 @@ public class RpcServiceConfig {
      * when the interface has multiple implementation classes, distinguish by group
      */
     private String group = "";
+    /**
+     * serialization used for requests to this service, rpc.serialization is used when blank
+     */
+    private String serialization;
 
     /**
      * target service
@@ -21,6 +21,33 @@ public abstract class AbstractLoadBalance implements LoadBalance {
         return doSelect(serviceAddresses, rpcRequest);
     }
 
+    @Override
+    public int select(RoutingSnapshot snapshot, RpcRequest rpcRequest) {
+        if (snapshot.size() == 0) {
+            return -1;
+        }
+        if (snapshot.size() == 1) {
+            return 0;
+        }
+        return doSelect(snapshot, rpcRequest);
+    }
+
     protected abstract String doSelect(List<String> serviceAddresses, RpcRequest rpcRequest);
 
+    /**
+     * Select from a snapshot with at least two instances, by default through {@link #doSelect(List, RpcRequest)}
+     * on its instance list
+     */
+    protected int doSelect(RoutingSnapshot snapshot, RpcRequest rpcRequest) {
+        return snapshot.indexOf(doSelect(snapshot.getServiceUrls(), rpcRequest));
+    }
+
+    /**
+     * @param snapshot the snapshot being selected from, null when selecting from a plain list
+     * @return weight of the instance, 1 for every instance of a plain list
+     */
+    protected static int weightOf(RoutingSnapshot snapshot, int index) {
+        return snapshot == null ? 1 : snapshot.getWeight(index);
+    }
+
 }
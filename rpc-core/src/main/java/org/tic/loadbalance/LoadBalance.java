@@ -19,4 +19,15 @@ public interface LoadBalance {
      * @return target service address
      */
     String selectServiceAddress(List<String> serviceUrlList, RpcRequest rpcRequest);
+
+    /**
+     * Choose one instance of a precomputed routing snapshot
+     *
+     * @param snapshot   instances of the service with their weights
+     * @param rpcRequest
+     * @return index of the target instance in the snapshot, -1 if none
+     */
+    default int select(RoutingSnapshot snapshot, RpcRequest rpcRequest) {
+        return snapshot.indexOf(selectServiceAddress(snapshot.getServiceUrls(), rpcRequest));
+    }
 }
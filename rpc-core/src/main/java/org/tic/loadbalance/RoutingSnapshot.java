@@ -0,0 +1,202 @@
+package org.tic.loadbalance;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Everything a load balancer needs to route the calls of one service, built once per change of its instances or of
+ * their health and shared by all calls until the next change. Instances are addressed by index; selecting one
+ * allocates nothing.
+ * <ul>
+ *     <li>weighted random: binary search of a random offset in the cumulative weights, O(log n)</li>
+ *     <li>weighted round robin: the smooth weighted round robin sequence is precomputed for one period
+ *     (weights reduced by their gcd), each call takes the next slot, O(1)</li>
+ * </ul>
+ */
+public final class RoutingSnapshot {
+
+    /**
+     * longest precomputed round robin period, weights are scaled down to fit
+     */
+    private static final int MAX_SCHEDULE_LENGTH = 4096;
+    /**
+     * highest total weight, weights are scaled down to fit
+     */
+    private static final int MAX_TOTAL_WEIGHT = Integer.MAX_VALUE / 2;
+
+    private final String[] serviceUrls;
+    private final InetSocketAddress[] addresses;
+    private final int[] weights;
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+    private final List<String> serviceUrlList;
+    private final Map<String, Integer> indexes;
+    private final AtomicInteger roundRobinSequence = new AtomicInteger();
+    private volatile int[] roundRobinSchedule;
+
+    /**
+     * @param serviceUrls instances, "host:port"
+     * @param weights     weight of each instance, at least 1
+     */
+    public RoutingSnapshot(List<String> serviceUrls, int[] weights) {
+        int size = serviceUrls.size();
+        this.serviceUrls = serviceUrls.toArray(new String[0]);
+        this.addresses = new InetSocketAddress[size];
+        this.weights = weights.clone();
+        this.cumulativeWeights = new int[size];
+        this.indexes = new HashMap<>(size * 2);
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            String[] hostAndPort = this.serviceUrls[i].split(":");
+            addresses[i] = new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+            this.weights[i] = Math.max(1, this.weights[i]);
+            total += this.weights[i];
+            indexes.put(this.serviceUrls[i], i);
+        }
+        if (total > MAX_TOTAL_WEIGHT) {
+            // keep the total an int for random selection, the proportions stay
+            long divisor = total / MAX_TOTAL_WEIGHT + 1;
+            for (int i = 0; i < size; i++) {
+                this.weights[i] = (int) Math.max(1, this.weights[i] / divisor);
+            }
+        }
+        int cumulative = 0;
+        for (int i = 0; i < size; i++) {
+            cumulative += this.weights[i];
+            cumulativeWeights[i] = cumulative;
+        }
+        this.totalWeight = cumulative;
+        this.serviceUrlList = Collections.unmodifiableList(Arrays.asList(this.serviceUrls));
+    }
+
+    public int size() {
+        return serviceUrls.length;
+    }
+
+    public String getServiceUrl(int index) {
+        return serviceUrls[index];
+    }
+
+    public InetSocketAddress getAddress(int index) {
+        return addresses[index];
+    }
+
+    public int getWeight(int index) {
+        return weights[index];
+    }
+
+    public int getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * @return the instances, the same list instance for the lifetime of the snapshot
+     */
+    public List<String> getServiceUrls() {
+        return serviceUrlList;
+    }
+
+    /**
+     * @return true if the snapshot routes exactly these instances with these weights, so it can be kept instead of
+     * rebuilt
+     */
+    public boolean routes(List<String> serviceUrls, int[] weights) {
+        return serviceUrlList.equals(serviceUrls) && Arrays.equals(this.weights, weights);
+    }
+
+    /**
+     * @return index of the instance, -1 if it is not part of the snapshot
+     */
+    public int indexOf(String serviceUrl) {
+        if (serviceUrl == null) {
+            return -1;
+        }
+        Integer index = indexes.get(serviceUrl);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param offset a value in [0, totalWeight)
+     * @return index of the instance whose weight range contains the offset
+     */
+    public int indexOfWeight(int offset) {
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulativeWeights[mid] > offset) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the next instance in smooth weighted round robin order
+     */
+    public int nextRoundRobin() {
+        int[] schedule = roundRobinSchedule;
+        if (schedule == null) {
+            // built on first use only, a racing thread builds the same schedule
+            schedule = buildRoundRobinSchedule();
+            roundRobinSchedule = schedule;
+        }
+        return schedule[(roundRobinSequence.getAndIncrement() & Integer.MAX_VALUE) % schedule.length];
+    }
+
+    /**
+     * One period of nginx's smooth weighted round robin: every round each instance gains its weight,
+     * the one with the highest current weight is picked and loses the total
+     */
+    private int[] buildRoundRobinSchedule() {
+        int size = weights.length;
+        int[] scaled = new int[size];
+        int gcd = 0;
+        for (int weight : weights) {
+            gcd = gcd(gcd, weight);
+        }
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            scaled[i] = weights[i] / gcd;
+            total += scaled[i];
+        }
+        if (total > MAX_SCHEDULE_LENGTH) {
+            long capped = 0;
+            for (int i = 0; i < size; i++) {
+                scaled[i] = (int) Math.max(1, scaled[i] * (long) MAX_SCHEDULE_LENGTH / total);
+                capped += scaled[i];
+            }
+            total = capped;
+        }
+        int[] schedule = new int[(int) total];
+        long[] current = new long[size];
+        for (int slot = 0; slot < schedule.length; slot++) {
+            int best = 0;
+            for (int i = 0; i < size; i++) {
+                current[i] += scaled[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            schedule[slot] = best;
+        }
+        return schedule;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -1,42 +1,66 @@
 package org.tic.loadbalance.loadbalancer;
 
 import lombok.extern.slf4j.Slf4j;
+import net.jpountz.xxhash.XXHash64;
+import net.jpountz.xxhash.XXHashFactory;
 import org.tic.loadbalance.AbstractLoadBalance;
+import org.tic.loadbalance.RoutingSnapshot;
 import org.tic.remoting.dto.RpcRequest;
 import org.tic.config.ConfigResolver;
 import org.tic.enums.RpcConfigEnum;
 
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Consistent hashing over a ring of 160 virtual nodes per instance.
+ * <p>
+ * The ring of a service is kept as a sorted {@code long[]} of points plus the instance owning each point, and is
+ * looked up by binary search. It is built once per topology: a new instance list reuses the ring as long as it holds
+ * the same instances. Points and keys are hashed with xxHash64, the ring itself is the same on every client.
+ * </p>
+ *
  * @author codesssss
  * @date 21/8/2024 10:56 am
  */
 @Slf4j
 public class ConsistentHashLoadBalance extends AbstractLoadBalance {
+    private static final int REPLICA_NUMBER = 160;
+    private static final long SEED = 0x9747b28cL;
+    private static final XXHash64 HASH = XXHashFactory.fastestInstance().hash64();
+
     private final ConcurrentHashMap<String, ConsistentHashSelector> selectors = new ConcurrentHashMap<>();
     private final String keyStrategy = ConfigResolver.getString(RpcConfigEnum.HASH_KEY_STRATEGY.getPropertyValue(), "method+params");
 
     @Override
     protected String doSelect(List<String> serviceAddresses, RpcRequest rpcRequest) {
-        int identityHashCode = System.identityHashCode(serviceAddresses);
-        // build rpc service name by rpcRequest
-        String rpcServiceName = rpcRequest.getRpcServiceName();
+        return serviceAddresses.get(selectorFor(rpcRequest.getRpcServiceName(), serviceAddresses).select(buildKey(rpcRequest)));
+    }
+
+    @Override
+    protected int doSelect(RoutingSnapshot snapshot, RpcRequest rpcRequest) {
+        return selectorFor(rpcRequest.getRpcServiceName(), snapshot.getServiceUrls()).select(buildKey(rpcRequest));
+    }
+
+    /**
+     * @return the ring of the service for exactly these instances, in this order
+     */
+    private ConsistentHashSelector selectorFor(String rpcServiceName, List<String> serviceAddresses) {
         ConsistentHashSelector selector = selectors.get(rpcServiceName);
-        // check for updates
-        if (selector == null || selector.identityHashCode != identityHashCode) {
-            selectors.put(rpcServiceName, new ConsistentHashSelector(serviceAddresses, 160, identityHashCode));
-            selector = selectors.get(rpcServiceName);
+        if (selector != null && selector.invokers == serviceAddresses) {
+            return selector;
+        }
+        if (selector != null && selector.invokers.equals(serviceAddresses)) {
+            // same topology in a new list, keep the points and only remember the new list
+            selector = selector.withInvokers(serviceAddresses);
+        } else {
+            selector = new ConsistentHashSelector(serviceAddresses, REPLICA_NUMBER);
+            log.info("Built consistent hash ring of service [{}] with {} instances", rpcServiceName, serviceAddresses.size());
         }
-        String key = buildKey(rpcRequest);
-        return selector.select(key);
+        selectors.put(rpcServiceName, selector);
+        return selector;
     }
 
     private String buildKey(RpcRequest rpcRequest) {
@@ -56,56 +80,68 @@ public class ConsistentHashLoadBalance extends AbstractLoadBalance {
         }
     }
 
-    static class ConsistentHashSelector {
-        private final TreeMap<Long, String> virtualInvokers;
-
-        private final int identityHashCode;
-
-        ConsistentHashSelector(List<String> invokers, int replicaNumber, int identityHashCode) {
-            this.virtualInvokers = new TreeMap<>();
-            this.identityHashCode = identityHashCode;
+    static long hash(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        return HASH.hash(bytes, 0, bytes.length, SEED);
+    }
 
-            for (String invoker : invokers) {
-                for (int i = 0; i < replicaNumber / 4; i++) {
-                    byte[] digest = md5(invoker + i);
-                    for (int h = 0; h < 4; h++) {
-                        long m = hash(digest, h);
-                        virtualInvokers.put(m, invoker);
-                    }
+    static class ConsistentHashSelector {
+        private final List<String> invokers;
+        /**
+         * ring points in ascending order
+         */
+        private final long[] points;
+        /**
+         * index in {@link #invokers} of the instance owning each point
+         */
+        private final int[] owners;
+
+        ConsistentHashSelector(List<String> invokers, int replicaNumber) {
+            this.invokers = invokers;
+            int size = invokers.size() * replicaNumber;
+            long[] rawPoints = new long[size];
+            for (int i = 0; i < invokers.size(); i++) {
+                String invoker = invokers.get(i);
+                for (int r = 0; r < replicaNumber; r++) {
+                    rawPoints[i * replicaNumber + r] = hash(invoker + "#" + r);
                 }
             }
-        }
-
-        static byte[] md5(String key) {
-            MessageDigest md;
-            try {
-                md = MessageDigest.getInstance("MD5");
-                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
-                md.update(bytes);
-            } catch (NoSuchAlgorithmException e) {
-                throw new IllegalStateException(e.getMessage(), e);
+            // order the points, each one remembering the instance it came from
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(rawPoints[a], rawPoints[b]));
+            this.points = new long[size];
+            this.owners = new int[size];
+            for (int i = 0; i < size; i++) {
+                points[i] = rawPoints[order[i]];
+                owners[i] = order[i] / replicaNumber;
             }
-
-            return md.digest();
         }
 
-        static long hash(byte[] digest, int idx) {
-            return ((long) (digest[3 + idx * 4] & 255) << 24 | (long) (digest[2 + idx * 4] & 255) << 16 | (long) (digest[1 + idx * 4] & 255) << 8 | (long) (digest[idx * 4] & 255)) & 4294967295L;
+        private ConsistentHashSelector(List<String> invokers, long[] points, int[] owners) {
+            this.invokers = invokers;
+            this.points = points;
+            this.owners = owners;
         }
 
-        public String select(String rpcServiceKey) {
-            byte[] digest = md5(rpcServiceKey);
-            return selectForKey(hash(digest, 0));
+        ConsistentHashSelector withInvokers(List<String> sameInvokers) {
+            return new ConsistentHashSelector(sameInvokers, points, owners);
         }
 
-        public String selectForKey(long hashCode) {
-            Map.Entry<Long, String> entry = virtualInvokers.tailMap(hashCode, true).firstEntry();
-
-            if (entry == null) {
-                entry = virtualInvokers.firstEntry();
+        /**
+         * @return index of the instance owning the first point at or after the hash of the key, wrapping around
+         */
+        int select(String rpcServiceKey) {
+            int position = Arrays.binarySearch(points, hash(rpcServiceKey));
+            if (position < 0) {
+                position = -position - 1;
+                if (position == points.length) {
+                    position = 0;
+                }
             }
-
-            return entry.getValue();
+            return owners[position];
         }
     }
 }
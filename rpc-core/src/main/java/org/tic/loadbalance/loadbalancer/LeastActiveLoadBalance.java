@@ -0,0 +1,62 @@
+package org.tic.loadbalance.loadbalancer;
+
+import org.tic.factory.SingletonFactory;
+import org.tic.loadbalance.AbstractLoadBalance;
+import org.tic.loadbalance.RoutingSnapshot;
+import org.tic.remoting.dto.RpcRequest;
+import org.tic.remoting.transport.netty.client.InstanceLoadTracker;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sends the call to the instance with the fewest requests in flight from this client, ties are split by weight.
+ * Looks at every instance, O(n); {@link P2CLoadBalance} compares two random ones instead.
+ */
+public class LeastActiveLoadBalance extends AbstractLoadBalance {
+
+    private final InstanceLoadTracker loadTracker = SingletonFactory.getInstance(InstanceLoadTracker.class);
+
+    @Override
+    protected String doSelect(List<String> serviceAddresses, RpcRequest rpcRequest) {
+        return serviceAddresses.get(select(serviceAddresses, null));
+    }
+
+    @Override
+    protected int doSelect(RoutingSnapshot snapshot, RpcRequest rpcRequest) {
+        return select(snapshot.getServiceUrls(), snapshot);
+    }
+
+    private int select(List<String> serviceUrls, RoutingSnapshot snapshot) {
+        int leastActive = Integer.MAX_VALUE;
+        int leastCount = 0;
+        int leastWeight = 0;
+        int first = 0;
+        for (int i = 0; i < serviceUrls.size(); i++) {
+            int active = loadTracker.active(serviceUrls.get(i));
+            if (active < leastActive) {
+                leastActive = active;
+                leastCount = 1;
+                leastWeight = weightOf(snapshot, i);
+                first = i;
+            } else if (active == leastActive) {
+                leastCount++;
+                leastWeight += weightOf(snapshot, i);
+            }
+        }
+        if (leastCount == 1) {
+            return first;
+        }
+        int offset = ThreadLocalRandom.current().nextInt(leastWeight);
+        for (int i = first; i < serviceUrls.size(); i++) {
+            if (loadTracker.active(serviceUrls.get(i)) == leastActive) {
+                offset -= weightOf(snapshot, i);
+                if (offset < 0) {
+                    return i;
+                }
+            }
+        }
+        // the counts moved since the first pass
+        return first;
+    }
+}
@@ -0,0 +1,49 @@
+package org.tic.loadbalance.loadbalancer;
+
+import org.tic.factory.SingletonFactory;
+import org.tic.loadbalance.AbstractLoadBalance;
+import org.tic.loadbalance.RoutingSnapshot;
+import org.tic.remoting.dto.RpcRequest;
+import org.tic.remoting.transport.netty.client.InstanceLoadTracker;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of two choices: picks two distinct instances at random and sends the call to the less loaded one,
+ * load being requests in flight from this client divided by weight. O(1) however many instances there are,
+ * and unlike always taking the least loaded instance it does not make every client pile onto the same one.
+ */
+public class P2CLoadBalance extends AbstractLoadBalance {
+
+    protected final InstanceLoadTracker loadTracker = SingletonFactory.getInstance(InstanceLoadTracker.class);
+
+    @Override
+    protected String doSelect(List<String> serviceAddresses, RpcRequest rpcRequest) {
+        return serviceAddresses.get(select(serviceAddresses, null));
+    }
+
+    @Override
+    protected int doSelect(RoutingSnapshot snapshot, RpcRequest rpcRequest) {
+        return select(snapshot.getServiceUrls(), snapshot);
+    }
+
+    /**
+     * @return load of the instance before weighting, lower is better
+     */
+    protected double load(String serviceUrl) {
+        return loadTracker.active(serviceUrl) + 1;
+    }
+
+    private int select(List<String> serviceUrls, RoutingSnapshot snapshot) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(serviceUrls.size());
+        int b = random.nextInt(serviceUrls.size() - 1);
+        if (b >= a) {
+            b++;
+        }
+        double loadA = load(serviceUrls.get(a)) / weightOf(snapshot, a);
+        double loadB = load(serviceUrls.get(b)) / weightOf(snapshot, b);
+        return loadA <= loadB ? a : b;
+    }
+}
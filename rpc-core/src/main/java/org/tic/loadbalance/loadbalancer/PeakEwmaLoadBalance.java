@@ -0,0 +1,14 @@
+package org.tic.loadbalance.loadbalancer;
+
+/**
+ * Power of two choices on peak EWMA load: the moving average of response latency, which follows a latency spike
+ * at once and forgets it slowly (rpc.loadbalance.ewma.decay.ms), times the requests in flight plus one.
+ * Slow instances get less traffic long before they fail.
+ */
+public class PeakEwmaLoadBalance extends P2CLoadBalance {
+
+    @Override
+    protected double load(String serviceUrl) {
+        return loadTracker.peakEwmaLoad(serviceUrl);
+    }
+}
@@ -1,10 +1,12 @@
 package org.tic.loadbalance.loadbalancer;
 
 import org.tic.loadbalance.AbstractLoadBalance;
+import org.tic.loadbalance.RoutingSnapshot;
 import org.tic.remoting.dto.RpcRequest;
 
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author codesssss
@@ -16,4 +18,9 @@ public class RandomLoadBalance extends AbstractLoadBalance {
         Random random = new Random();
         return serviceAddresses.get(random.nextInt(serviceAddresses.size()));
     }
+
+    @Override
+    protected int doSelect(RoutingSnapshot snapshot, RpcRequest rpcRequest) {
+        return ThreadLocalRandom.current().nextInt(snapshot.size());
+    }
 }
@@ -1,16 +1,19 @@
 package org.tic.loadbalance.loadbalancer;
 
 import org.tic.loadbalance.AbstractLoadBalance;
+import org.tic.loadbalance.RoutingSnapshot;
 import org.tic.remoting.dto.RpcRequest;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Weighted random load balancer based on frequency of addresses in the list.
  * If the list contains duplicates (e.g., expanded by weight), they will increase probability.
+ * With a {@link RoutingSnapshot} the instance weights are used directly, by binary search in the cumulative weights.
  */
 public class WeightedRandomLoadBalance extends AbstractLoadBalance {
 
@@ -35,4 +38,9 @@ public class WeightedRandomLoadBalance extends AbstractLoadBalance {
         }
         return serviceAddresses.get(0);
     }
+
+    @Override
+    protected int doSelect(RoutingSnapshot snapshot, RpcRequest rpcRequest) {
+        return snapshot.indexOfWeight(ThreadLocalRandom.current().nextInt(snapshot.getTotalWeight()));
+    }
 }
@@ -1,6 +1,7 @@
 package org.tic.loadbalance.loadbalancer;
 
 import org.tic.loadbalance.AbstractLoadBalance;
+import org.tic.loadbalance.RoutingSnapshot;
 import org.tic.remoting.dto.RpcRequest;
 
 import java.util.LinkedHashMap;
@@ -10,6 +11,8 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Weighted round-robin based on frequency of addresses in the provided list.
+ * With a {@link RoutingSnapshot} it follows the snapshot's precomputed smooth weighted round robin sequence,
+ * which interleaves heavy instances with light ones instead of sending them bursts.
  */
 public class WeightedRoundRobinLoadBalance extends AbstractLoadBalance {
 
@@ -35,4 +38,9 @@ public class WeightedRoundRobinLoadBalance extends AbstractLoadBalance {
         }
         return serviceAddresses.get(0);
     }
+
+    @Override
+    protected int doSelect(RoutingSnapshot snapshot, RpcRequest rpcRequest) {
+        return snapshot.nextRoundRobin();
+    }
 }
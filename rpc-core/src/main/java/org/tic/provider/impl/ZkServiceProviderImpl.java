@@ -6,8 +6,10 @@ import org.tic.enums.RpcErrorMessageEnum;
 import org.tic.enums.ServiceRegistryEnum;
 import org.tic.exception.RpcException;
 import org.tic.extension.ExtensionLoader;
+import org.tic.factory.SingletonFactory;
 import org.tic.provider.ServiceProvider;
 import org.tic.registry.ServiceRegistry;
+import org.tic.remoting.handler.MethodTable;
 import org.tic.remoting.transport.netty.server.NettyRpcServer;
 
 import java.net.InetAddress;
@@ -31,10 +33,12 @@ public class ZkServiceProviderImpl implements ServiceProvider {
     private final Map<String, Object> serviceMap;
     private final Set<String> registeredService;
     private final ServiceRegistry serviceRegistry;
+    private final MethodTable methodTable;
 
     public ZkServiceProviderImpl() {
         serviceMap = new ConcurrentHashMap<>();
         registeredService = ConcurrentHashMap.newKeySet();
+        methodTable = SingletonFactory.getInstance(MethodTable.class);
         serviceRegistry = ExtensionLoader.getExtensionLoader(ServiceRegistry.class).getExtension(ServiceRegistryEnum.ZK.getName());
     }
 
@@ -46,6 +50,8 @@ public class ZkServiceProviderImpl implements ServiceProvider {
         }
         registeredService.add(rpcServiceName);
         serviceMap.put(rpcServiceName, rpcServiceConfig.getService());
+        // bind the invokers now instead of on the first request
+        methodTable.registerService(rpcServiceConfig);
         log.info("Add service: {} and interfaces:{}", rpcServiceName, rpcServiceConfig.getService().getClass().getInterfaces());
     }
 
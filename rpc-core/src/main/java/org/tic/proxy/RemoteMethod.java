@@ -0,0 +1,48 @@
+package org.tic.proxy;
+
+import org.tic.config.RpcServiceConfig;
+import org.tic.remoting.dto.RpcRequest;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Per-method call metadata, computed once per proxied method so a call only has to wrap its arguments
+ */
+public final class RemoteMethod {
+
+    private final String interfaceName;
+    private final String methodName;
+    private final Class<?>[] paramTypes;
+    private final String group;
+    private final String version;
+    private final boolean async;
+
+    private RemoteMethod(Method method, RpcServiceConfig rpcServiceConfig) {
+        this.interfaceName = method.getDeclaringClass().getName();
+        this.methodName = method.getName();
+        this.paramTypes = method.getParameterTypes();
+        this.group = rpcServiceConfig.getGroup();
+        this.version = rpcServiceConfig.getVersion();
+        Class<?> returnType = method.getReturnType();
+        // methods declared to return CompletableFuture or CompletionStage are called without blocking
+        this.async = returnType == CompletableFuture.class || returnType == CompletionStage.class;
+    }
+
+    public static RemoteMethod of(Method method, RpcServiceConfig rpcServiceConfig) {
+        return new RemoteMethod(method, rpcServiceConfig);
+    }
+
+    public RpcRequest newRequest(Object[] args) {
+        return new RpcRequest(interfaceName, methodName, args, paramTypes, version, group, 0, 0);
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+}
@@ -11,14 +11,18 @@ import org.tic.remoting.dto.RpcRequest;
 import org.tic.remoting.dto.RpcResponse;
 import org.tic.remoting.transport.RpcRequestTransport;
 import org.tic.remoting.transport.netty.client.NettyRpcClient;
+import org.tic.utils.threadpoolutils.ThreadPoolFactoryUtil;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.UUID;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -33,6 +37,8 @@ public class RpcClientProxy implements InvocationHandler {
      * Default request timeout in milliseconds (30 seconds)
      */
     private static final long DEFAULT_REQUEST_TIMEOUT_MS = 30000L;
+    private static final String BYTECODE_PROXY = "bytecode";
+    private static final String PROXY_TYPE = ConfigResolver.getString(RpcConfigEnum.CLIENT_PROXY.getPropertyValue(), "jdk");
 
     /**
      * Used to send requests to the server.And there are two implementations: socket and netty
@@ -40,6 +46,7 @@ public class RpcClientProxy implements InvocationHandler {
     private final RpcRequestTransport rpcRequestTransport;
     private final RpcServiceConfig rpcServiceConfig;
     private final long requestTimeoutMs;
+    private final Map<Method, RemoteMethod> remoteMethods = new ConcurrentHashMap<>();
 
     public RpcClientProxy(RpcRequestTransport rpcRequestTransport, RpcServiceConfig rpcServiceConfig) {
         this.rpcRequestTransport = rpcRequestTransport;
@@ -62,10 +69,17 @@ public class RpcClientProxy implements InvocationHandler {
     }
 
     /**
-     * get the proxy object
+     * get the proxy object, a generated stub class if {@code rpc.client.proxy=bytecode}, a {@link Proxy} otherwise
      */
     @SuppressWarnings("unchecked")
     public <T> T getProxy(Class<T> clazz) {
+        if (BYTECODE_PROXY.equals(PROXY_TYPE)) {
+            try {
+                return (T) StubGenerator.newStub(clazz, this, rpcServiceConfig);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                log.warn("Generate stub for [{}] failed, fall back to java.lang.reflect.Proxy", clazz.getName(), e);
+            }
+        }
         return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[]{clazz}, this);
     }
 
@@ -73,38 +87,40 @@ public class RpcClientProxy implements InvocationHandler {
      * This method is actually called when you use a proxy object to call a method.
      * The proxy object is the object you get through the getProxy method.
      */
-    @SuppressWarnings("unchecked")
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) {
-        log.info("invoked method: [{}]", method.getName());
-        RpcRequest rpcRequest = RpcRequest.builder().methodName(method.getName())
-                .parameters(args)
-                .interfaceName(method.getDeclaringClass().getName())
-                .paramTypes(method.getParameterTypes())
-                .requestId(UUID.randomUUID().toString())
-                .group(rpcServiceConfig.getGroup())
-                .version(rpcServiceConfig.getVersion())
-                .build();
+        return call(remoteMethods.computeIfAbsent(method, m -> RemoteMethod.of(m, rpcServiceConfig)), args);
+    }
+
+    /**
+     * Send a call of {@code remoteMethod}, the entry point of both {@link #invoke} and the generated stubs
+     */
+    @SuppressWarnings("unchecked")
+    public Object call(RemoteMethod remoteMethod, Object[] args) {
+        log.info("invoked method: [{}]", remoteMethod.getMethodName());
+        RpcRequest rpcRequest = remoteMethod.newRequest(args);
+        if (remoteMethod.isAsync() && rpcRequestTransport instanceof NettyRpcClient) {
+            return invokeAsync(rpcRequest);
+        }
         RpcResponse<Object> rpcResponse = null;
         if (rpcRequestTransport instanceof NettyRpcClient) {
-            CompletableFuture<RpcResponse<Object>> completableFuture = (CompletableFuture<RpcResponse<Object>>) rpcRequestTransport.sendRpcRequest(rpcRequest);
+            CompletableFuture<RpcResponse<Object>> completableFuture = (CompletableFuture<RpcResponse<Object>>) rpcRequestTransport.sendRpcRequest(rpcRequest, rpcServiceConfig);
             try {
-                // Use timeout to prevent indefinite blocking
-                rpcResponse = completableFuture.get(requestTimeoutMs, TimeUnit.MILLISECONDS);
-            } catch (TimeoutException e) {
-                // Cancel the future and clean up
-                completableFuture.cancel(true);
-                log.error("RPC request timeout after {}ms, requestId: {}, interface: {}, method: {}", 
-                        requestTimeoutMs, rpcRequest.getRequestId(), rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
-                throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, 
-                        "Request timeout after " + requestTimeoutMs + "ms, " + INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
+                // the pending request table fails the future at its deadline, so this never blocks indefinitely
+                rpcResponse = completableFuture.get();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                log.error("RPC request interrupted, requestId: {}", rpcRequest.getRequestId());
+                log.error("RPC request interrupted, interface: {}, method: {}", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
                 throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, 
                         "Request interrupted, " + INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
             } catch (ExecutionException e) {
-                log.error("RPC request execution failed, requestId: {}, cause: {}", rpcRequest.getRequestId(), e.getCause());
+                if (e.getCause() instanceof TimeoutException) {
+                    log.error("RPC request timeout after {}ms, interface: {}, method: {}",
+                            requestTimeoutMs, rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
+                    throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE,
+                            "Request timeout after " + requestTimeoutMs + "ms, " + INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
+                }
+                log.error("RPC request execution failed, interface: {}, method: {}, cause: {}", rpcRequest.getInterfaceName(), rpcRequest.getMethodName(), e.getCause());
                 throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, 
                         "Request execution failed: " + e.getCause().getMessage() + ", " + INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
             }
@@ -113,15 +129,69 @@ public class RpcClientProxy implements InvocationHandler {
         return rpcResponse.getData();
     }
 
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> invokeAsync(RpcRequest rpcRequest) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        CompletableFuture<RpcResponse<Object>> responseFuture;
+        try {
+            responseFuture = (CompletableFuture<RpcResponse<Object>>) rpcRequestTransport.sendRpcRequest(rpcRequest, rpcServiceConfig);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        Executor callbackExecutor = CallbackExecutorHolder.EXECUTOR;
+        responseFuture.whenComplete((rpcResponse, error) -> {
+            if (callbackExecutor == null) {
+                completeAsync(result, rpcRequest, rpcResponse, error);
+            } else {
+                callbackExecutor.execute(() -> completeAsync(result, rpcRequest, rpcResponse, error));
+            }
+        });
+        return result;
+    }
+
+    private void completeAsync(CompletableFuture<Object> result, RpcRequest rpcRequest, RpcResponse<Object> rpcResponse, Throwable error) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            String reason = cause instanceof TimeoutException
+                    ? "Request timeout after " + requestTimeoutMs + "ms, "
+                    : "Request execution failed: " + cause.getMessage() + ", ";
+            result.completeExceptionally(new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE,
+                    reason + INTERFACE_NAME + ":" + rpcRequest.getInterfaceName()));
+            return;
+        }
+        try {
+            this.check(rpcResponse, rpcRequest);
+            result.complete(rpcResponse.getData());
+        } catch (RpcException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Lazily created executor for async callbacks, null when they run on the event loop
+     */
+    private static final class CallbackExecutorHolder {
+        private static final Executor EXECUTOR = create();
+
+        private static Executor create() {
+            int threads = ConfigResolver.getInt(RpcConfigEnum.CLIENT_CALLBACK_THREADS.getPropertyValue(), 0);
+            if (threads <= 0) {
+                return null;
+            }
+            return Executors.newFixedThreadPool(threads, ThreadPoolFactoryUtil.createThreadFactory("rpc-client-callback", true));
+        }
+    }
+
     private void check(RpcResponse<Object> rpcResponse, RpcRequest rpcRequest) {
         if (rpcResponse == null) {
             throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
         }
 
-        if (!rpcRequest.getRequestId().equals(rpcResponse.getRequestId())) {
-            throw new RpcException(RpcErrorMessageEnum.REQUEST_NOT_MATCH_RESPONSE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
+        if (rpcResponse.getCode() != null && rpcResponse.getCode() == RpcResponseCodeEnum.TOO_MANY_REQUESTS.getCode()) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_OVERLOADED, "retry after " + rpcResponse.getRetryAfterMs() + "ms, "
+                    + INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
         }
-
         if (rpcResponse.getCode() == null || !rpcResponse.getCode().equals(RpcResponseCodeEnum.SUCCESS.getCode())) {
             throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
         }
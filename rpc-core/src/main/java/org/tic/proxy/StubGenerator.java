@@ -0,0 +1,212 @@
+package org.tic.proxy;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import org.tic.config.RpcServiceConfig;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates a concrete client stub class per interface, an alternative to {@link java.lang.reflect.Proxy}.
+ * <p>
+ * The stub implements every method of the interface directly: it wraps the arguments into an {@code Object[]} and
+ * calls {@link RpcClientProxy#call(RemoteMethod, Object[])} with the {@link RemoteMethod} precomputed for that method,
+ * so there is no {@code InvocationHandler} dispatch and no reflection on the call path. The stub is defined in the
+ * package of the interface, so package-private interfaces work as well.
+ * </p>
+ */
+final class StubGenerator {
+
+    private static final String STUB_SUFFIX = "$$RpcStub";
+    private static final String HANDLER_NAME = Type.getInternalName(RpcClientProxy.class);
+    private static final String HANDLER_DESC = Type.getDescriptor(RpcClientProxy.class);
+    private static final String METHODS_DESC = Type.getDescriptor(RemoteMethod[].class);
+    private static final String CALL_DESC = Type.getMethodDescriptor(Type.getType(Object.class),
+            Type.getType(RemoteMethod.class), Type.getType(Object[].class));
+    private static final Map<Class<?>, Stub> STUBS = new ConcurrentHashMap<>();
+
+    private StubGenerator() {
+    }
+
+    /**
+     * @return a new stub of {@code clazz} whose calls go to {@code handler}
+     */
+    static Object newStub(Class<?> clazz, RpcClientProxy handler, RpcServiceConfig rpcServiceConfig) throws ReflectiveOperationException {
+        Stub stub = STUBS.get(clazz);
+        if (stub == null) {
+            stub = define(clazz);
+            Stub existing = STUBS.putIfAbsent(clazz, stub);
+            if (existing != null) {
+                stub = existing;
+            }
+        }
+        RemoteMethod[] remoteMethods = new RemoteMethod[stub.methods.size()];
+        for (int i = 0; i < remoteMethods.length; i++) {
+            remoteMethods[i] = RemoteMethod.of(stub.methods.get(i), rpcServiceConfig);
+        }
+        return stub.constructor.newInstance(handler, remoteMethods);
+    }
+
+    private static synchronized Stub define(Class<?> clazz) throws ReflectiveOperationException {
+        Stub stub = STUBS.get(clazz);
+        if (stub != null) {
+            return stub;
+        }
+        List<Method> methods = stubMethods(clazz);
+        byte[] bytes = generate(clazz, methods);
+        Class<?> stubClass = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup()).defineClass(bytes);
+        return new Stub(stubClass.getConstructor(RpcClientProxy.class, RemoteMethod[].class), methods);
+    }
+
+    /**
+     * Non-static interface methods, one per signature
+     */
+    private static List<Method> stubMethods(Class<?> clazz) {
+        Map<String, Method> methods = new LinkedHashMap<>();
+        for (Method method : clazz.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                methods.putIfAbsent(method.getName() + Type.getMethodDescriptor(method), method);
+            }
+        }
+        return new ArrayList<>(methods.values());
+    }
+
+    private static byte[] generate(Class<?> clazz, List<Method> methods) {
+        String stubName = Type.getInternalName(clazz) + STUB_SUFFIX;
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, stubName, null,
+                Type.getInternalName(Object.class), new String[]{Type.getInternalName(clazz)});
+        cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "handler", HANDLER_DESC, null, null).visitEnd();
+        cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "methods", METHODS_DESC, null, null).visitEnd();
+        generateConstructor(cw, stubName);
+        for (int i = 0; i < methods.size(); i++) {
+            generateMethod(cw, stubName, methods.get(i), i);
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void generateConstructor(ClassWriter cw, String stubName) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>",
+                Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(RpcClientProxy.class), Type.getType(RemoteMethod[].class)),
+                null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(Object.class), "<init>", "()V", false);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, stubName, "handler", HANDLER_DESC);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, stubName, "methods", METHODS_DESC);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * {@code return (R) handler.call(methods[index], new Object[]{args...});}
+     */
+    private static void generateMethod(ClassWriter cw, String stubName, Method method, int index) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method.getName(), Type.getMethodDescriptor(method), null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, stubName, "handler", HANDLER_DESC);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, stubName, "methods", METHODS_DESC);
+        mv.visitLdcInsn(index);
+        mv.visitInsn(Opcodes.AALOAD);
+        Class<?>[] paramTypes = method.getParameterTypes();
+        if (paramTypes.length == 0) {
+            // same as the java.lang.reflect.Proxy path, which passes null for no arguments
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        } else {
+            mv.visitLdcInsn(paramTypes.length);
+            mv.visitTypeInsn(Opcodes.ANEWARRAY, Type.getInternalName(Object.class));
+            int slot = 1;
+            for (int i = 0; i < paramTypes.length; i++) {
+                Type type = Type.getType(paramTypes[i]);
+                mv.visitInsn(Opcodes.DUP);
+                mv.visitLdcInsn(i);
+                mv.visitVarInsn(type.getOpcode(Opcodes.ILOAD), slot);
+                box(mv, type);
+                mv.visitInsn(Opcodes.AASTORE);
+                slot += type.getSize();
+            }
+        }
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, HANDLER_NAME, "call", CALL_DESC, false);
+        unboxAndReturn(mv, Type.getType(method.getReturnType()));
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void box(MethodVisitor mv, Type type) {
+        Class<?> wrapper = wrapper(type);
+        if (wrapper == null) {
+            return;
+        }
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(wrapper), "valueOf",
+                Type.getMethodDescriptor(Type.getType(wrapper), type), false);
+    }
+
+    private static void unboxAndReturn(MethodVisitor mv, Type returnType) {
+        if (returnType.getSort() == Type.VOID) {
+            mv.visitInsn(Opcodes.POP);
+            mv.visitInsn(Opcodes.RETURN);
+            return;
+        }
+        Class<?> wrapper = wrapper(returnType);
+        if (wrapper == null) {
+            mv.visitTypeInsn(Opcodes.CHECKCAST, returnType.getInternalName());
+        } else {
+            // a null result for a primitive fails with a NullPointerException, like java.lang.reflect.Proxy does
+            mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(wrapper));
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(wrapper), returnType.getClassName() + "Value",
+                    Type.getMethodDescriptor(returnType), false);
+        }
+        mv.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+    }
+
+    private static Class<?> wrapper(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+                return Boolean.class;
+            case Type.CHAR:
+                return Character.class;
+            case Type.BYTE:
+                return Byte.class;
+            case Type.SHORT:
+                return Short.class;
+            case Type.INT:
+                return Integer.class;
+            case Type.FLOAT:
+                return Float.class;
+            case Type.LONG:
+                return Long.class;
+            case Type.DOUBLE:
+                return Double.class;
+            default:
+                return null;
+        }
+    }
+
+    private static final class Stub {
+        private final Constructor<?> constructor;
+        private final List<Method> methods;
+
+        private Stub(Constructor<?> constructor, List<Method> methods) {
+            this.constructor = constructor;
+            this.methods = methods;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.tic.registry;
+
+import java.util.List;
+
+/**
+ * Notified with the instances discovery found for a service
+ */
+@FunctionalInterface
+public interface InstanceListener {
+
+    /**
+     * @param rpcServiceName rpc service name eg:org.tic.HelloServicetest2version1
+     * @param serviceUrls    current instances of the service, "host:port"
+     */
+    void onInstances(String rpcServiceName, List<String> serviceUrls);
+}
@@ -11,4 +11,10 @@ import java.net.InetSocketAddress;
 @SPI
 public interface ServiceDiscovery {
     InetSocketAddress lookupService(RpcRequest rpcRequest);
+
+    /**
+     * Register a listener called whenever the instances of a looked up service change
+     */
+    default void addInstanceListener(InstanceListener listener) {
+    }
 }
@@ -0,0 +1,41 @@
+package org.tic.registry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of the instances of one service and their registered weights. Discovery replaces the whole
+ * snapshot when the registry reports a change, so a lookup reads it without locks or network calls.
+ */
+public final class ServiceInstances {
+
+    public static final ServiceInstances EMPTY = new ServiceInstances(Collections.emptyList(), Collections.emptyMap());
+
+    private final List<String> serviceUrls;
+    private final Map<String, Integer> weights;
+
+    /**
+     * @param serviceUrls instances of the service, "host:port"
+     * @param weights     registered weight of each instance, instances without one are left out
+     */
+    public ServiceInstances(List<String> serviceUrls, Map<String, Integer> weights) {
+        this.serviceUrls = Collections.unmodifiableList(serviceUrls);
+        this.weights = Collections.unmodifiableMap(weights);
+    }
+
+    public List<String> getServiceUrls() {
+        return serviceUrls;
+    }
+
+    /**
+     * @return the registered weight of the instance, 0 if it has none
+     */
+    public int getWeight(String serviceUrl) {
+        return weights.getOrDefault(serviceUrl, 0);
+    }
+
+    public boolean isEmpty() {
+        return serviceUrls.isEmpty();
+    }
+}
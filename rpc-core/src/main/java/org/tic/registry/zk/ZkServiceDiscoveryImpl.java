@@ -1,23 +1,28 @@
 package org.tic.registry.zk;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.curator.framework.CuratorFramework;
 import org.tic.config.ConfigResolver;
+import org.tic.config.CustomShutdownHook;
 import org.tic.enums.LoadBalanceEnum;
 import org.tic.enums.RpcErrorMessageEnum;
 import org.tic.exception.RpcException;
 import org.tic.extension.ExtensionLoader;
 import org.tic.factory.SingletonFactory;
 import org.tic.loadbalance.LoadBalance;
+import org.tic.loadbalance.RoutingSnapshot;
+import org.tic.registry.InstanceListener;
 import org.tic.registry.ServiceDiscovery;
-import org.tic.registry.zk.utils.CuratorUtils;
+import org.tic.registry.ServiceInstances;
 import org.tic.remoting.dto.RpcRequest;
 import org.tic.remoting.transport.netty.client.InstanceHealthTracker;
-import org.tic.utils.CollectionUtil;
 
 import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
@@ -26,8 +31,15 @@ import java.util.ArrayList;
  */
 @Slf4j
 public class ZkServiceDiscoveryImpl implements ServiceDiscovery {
+    private static final int DEFAULT_WEIGHT = 100;
     private final LoadBalance loadBalance;
     private final InstanceHealthTracker healthTracker;
+    private final List<InstanceListener> instanceListeners = new CopyOnWriteArrayList<>();
+    private final ZkServiceInstanceCache instanceCache = new ZkServiceInstanceCache(this::reportInstances);
+    /**
+     * routing snapshot of each service, rebuilt when its instances or their health change
+     */
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
 
     public ZkServiceDiscoveryImpl() {
         String strategy = ConfigResolver.getString(org.tic.enums.RpcConfigEnum.LOAD_BALANCE_STRATEGY.getPropertyValue(), LoadBalanceEnum.CONSISTENT_HASH.getName());
@@ -39,57 +51,167 @@ public class ZkServiceDiscoveryImpl implements ServiceDiscovery {
         }
         this.loadBalance = lb;
         this.healthTracker = SingletonFactory.getInstance(InstanceHealthTracker.class);
+        CustomShutdownHook.getCustomShutdownHook().register("zookeeper discovery watches", instanceCache::close);
     }
 
     @Override
     public InetSocketAddress lookupService(RpcRequest rpcRequest) {
         String rpcServiceName = rpcRequest.getRpcServiceName();
-        CuratorFramework zkClient = CuratorUtils.getZkClient();
-        List<String> serviceUrlList = CuratorUtils.getChildrenNodes(zkClient, rpcServiceName);
-        if (CollectionUtil.isEmpty(serviceUrlList)) {
+        // served from memory, kept up to date by zookeeper watches
+        ServiceInstances instances = instanceCache.get(rpcServiceName);
+        if (instances.isEmpty()) {
             throw new RpcException(RpcErrorMessageEnum.SERVICE_CAN_NOT_BE_FOUND, rpcServiceName);
         }
-        List<String> healthyList = healthTracker.filterCandidates(serviceUrlList);
-        // optional: expand addresses by weight if node carries weight data
-        List<String> weightedList = buildWeightedList(zkClient, rpcServiceName, healthyList);
-        List<String> candidate = weightedList.isEmpty() ? healthyList : weightedList;
+        Route route = routes.get(rpcServiceName);
+        long healthVersion = healthTracker.version();
+        if (route == null || !route.isCurrent(instances, healthVersion)) {
+            route = refreshRoute(route, instances, healthVersion);
+            routes.put(rpcServiceName, route);
+        }
         // load balancing
-        String targetServiceUrl = loadBalance.selectServiceAddress(candidate, rpcRequest);
-        log.info("Successfully found the service address:[{}]", targetServiceUrl);
-        String[] socketAddressArray = targetServiceUrl.split(":");
-        String host = socketAddressArray[0];
-        int port = Integer.parseInt(socketAddressArray[1]);
-        return new InetSocketAddress(host, port);
+        int index = loadBalance.select(route.snapshot, rpcRequest);
+        if (index < 0) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_CAN_NOT_BE_FOUND, rpcServiceName);
+        }
+        if (route.halfOpen[index]) {
+            healthTracker.onRouted(route.snapshot.getServiceUrl(index));
+        }
+        log.info("Successfully found the service address:[{}]", route.snapshot.getServiceUrl(index));
+        return route.snapshot.getAddress(index);
     }
 
-    private List<String> buildWeightedList(org.apache.curator.framework.CuratorFramework zkClient, String rpcServiceName, List<String> serviceUrlList) {
-        List<String> result = new ArrayList<>();
-        String base = CuratorUtils.ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName;
-        for (String url : serviceUrlList) {
-            String path = base + "/" + url;
-            byte[] data = CuratorUtils.getNodeData(zkClient, path);
-            int weight = 0;
-            if (data != null) {
-                try {
-                    weight = Integer.parseInt(new String(data, java.nio.charset.StandardCharsets.UTF_8));
-                } catch (NumberFormatException ignored) {}
+    @Override
+    public void addInstanceListener(InstanceListener listener) {
+        instanceListeners.add(listener);
+    }
+
+    private void reportInstances(String rpcServiceName, ServiceInstances instances) {
+        for (InstanceListener listener : instanceListeners) {
+            try {
+                listener.onInstances(rpcServiceName, instances.getServiceUrls());
+            } catch (RuntimeException e) {
+                log.warn("Instance listener failed for service [{}]", rpcServiceName, e);
             }
+        }
+    }
+
+    /**
+     * Keep the route while only instances of other services changed their health, rebuild it otherwise
+     */
+    private Route refreshRoute(Route route, ServiceInstances instances, long healthVersion) {
+        if (route != null && route.instances == instances && !route.isReopenDue() && route.isHealthCurrent(healthTracker)) {
+            return route.withHealthVersion(healthVersion);
+        }
+        return buildRoute(route, instances, healthVersion);
+    }
+
+    /**
+     * Route to the instances the health tracker allows, weighted by registered weight times health weight times
+     * latency relative to the fastest of them (at least a tenth). If it allows none, route to all of them rather
+     * than fail every call. A previous snapshot with the same instances and weights is kept, with its round robin
+     * position.
+     */
+    private Route buildRoute(Route previous, ServiceInstances instances, long healthVersion) {
+        List<String> serviceUrls = instances.getServiceUrls();
+        // read before the health they version, a change while building is then picked up by the next lookup
+        long[] instanceVersions = new long[serviceUrls.size()];
+        for (int i = 0; i < serviceUrls.size(); i++) {
+            instanceVersions[i] = healthTracker.version(serviceUrls.get(i));
+        }
+        List<String> routable = new ArrayList<>(serviceUrls.size());
+        int[] weights = new int[serviceUrls.size()];
+        long[] rawWeights = new long[serviceUrls.size()];
+        boolean[] halfOpen = new boolean[serviceUrls.size()];
+        long[] latencies = new long[serviceUrls.size()];
+        long fastest = Long.MAX_VALUE;
+        long reopenAtMs = Long.MAX_VALUE;
+        for (String url : serviceUrls) {
             int healthWeight = healthTracker.healthWeight(url);
             if (healthWeight == 0) {
+                reopenAtMs = Math.min(reopenAtMs, healthTracker.reopenAtMs(url));
                 continue;
             }
-            if (weight <= 0) {
-                // fallback to single entry when no weight
-                result.add(url);
-            } else {
-                // cap weight to avoid huge lists
-                int capped = Math.min((weight * healthWeight) / 100, 200);
-                capped = Math.max(capped, 1);
-                for (int i = 0; i < capped; i++) {
-                    result.add(url);
+            int i = routable.size();
+            halfOpen[i] = healthTracker.isHalfOpen(url);
+            rawWeights[i] = (long) registeredWeight(instances, url) * healthWeight;
+            latencies[i] = healthTracker.latencyMicros(url);
+            if (latencies[i] > 0) {
+                fastest = Math.min(fastest, latencies[i]);
+            }
+            routable.add(url);
+        }
+        for (int i = 0; i < routable.size(); i++) {
+            // an instance without enough samples yet keeps its weight
+            double latencyFactor = latencies[i] > 0 ? Math.max(0.1, (double) fastest / latencies[i]) : 1;
+            weights[i] = (int) Math.min(Integer.MAX_VALUE, Math.max(1, Math.round(rawWeights[i] / 100.0 * latencyFactor)));
+        }
+        if (routable.isEmpty()) {
+            routable = serviceUrls;
+            for (int i = 0; i < serviceUrls.size(); i++) {
+                weights[i] = registeredWeight(instances, serviceUrls.get(i));
+            }
+        }
+        int[] routeWeights = Arrays.copyOf(weights, routable.size());
+        RoutingSnapshot snapshot = previous != null && previous.snapshot.routes(routable, routeWeights)
+                ? previous.snapshot : new RoutingSnapshot(routable, routeWeights);
+        return new Route(instances, healthVersion, instanceVersions, reopenAtMs, snapshot, halfOpen);
+    }
+
+    /**
+     * instances registered without a weight count as the default weight
+     */
+    private static int registeredWeight(ServiceInstances instances, String url) {
+        int weight = instances.getWeight(url);
+        return weight > 0 ? weight : DEFAULT_WEIGHT;
+    }
+
+    /**
+     * Routing snapshot of a service with what it was built from
+     */
+    private static final class Route {
+        private final ServiceInstances instances;
+        /**
+         * health version of all instances when the route was last checked, and of each of its instances when built
+         */
+        private final long healthVersion;
+        private final long[] instanceVersions;
+        /**
+         * earliest time an excluded instance may take a trial call, the route is rebuilt then
+         */
+        private final long reopenAtMs;
+        private final RoutingSnapshot snapshot;
+        private final boolean[] halfOpen;
+
+        private Route(ServiceInstances instances, long healthVersion, long[] instanceVersions, long reopenAtMs,
+                      RoutingSnapshot snapshot, boolean[] halfOpen) {
+            this.instances = instances;
+            this.healthVersion = healthVersion;
+            this.instanceVersions = instanceVersions;
+            this.reopenAtMs = reopenAtMs;
+            this.snapshot = snapshot;
+            this.halfOpen = halfOpen;
+        }
+
+        private boolean isCurrent(ServiceInstances currentInstances, long currentHealthVersion) {
+            return instances == currentInstances && healthVersion == currentHealthVersion && !isReopenDue();
+        }
+
+        private boolean isReopenDue() {
+            return reopenAtMs != Long.MAX_VALUE && System.currentTimeMillis() >= reopenAtMs;
+        }
+
+        private boolean isHealthCurrent(InstanceHealthTracker healthTracker) {
+            List<String> serviceUrls = instances.getServiceUrls();
+            for (int i = 0; i < serviceUrls.size(); i++) {
+                if (healthTracker.version(serviceUrls.get(i)) != instanceVersions[i]) {
+                    return false;
                 }
             }
+            return true;
+        }
+
+        private Route withHealthVersion(long currentHealthVersion) {
+            return new Route(instances, currentHealthVersion, instanceVersions, reopenAtMs, snapshot, halfOpen);
         }
-        return result;
     }
 }
@@ -0,0 +1,180 @@
+package org.tic.registry.zk;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import org.apache.curator.utils.ZKPaths;
+import org.tic.config.ConfigResolver;
+import org.tic.enums.RpcConfigEnum;
+import org.tic.registry.ServiceInstances;
+import org.tic.registry.zk.utils.CuratorUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps a {@link ServiceInstances} snapshot of every looked up service, maintained only by zookeeper watch events.
+ * <p>
+ * The first lookup of a service starts a {@link CuratorCache} on its path and waits, at most
+ * {@code rpc.zk.discovery.init.timeout.ms}, for the initial load. From then on every change of the service's
+ * children or of their weight data rebuilds the snapshot and swaps it in, and lookups never touch zookeeper.
+ * While the zookeeper connection is down the last snapshot keeps being served.
+ * </p>
+ * <p>
+ * A service without a znode is not watched, it is looked up again on its next lookup; a watch whose service znode is
+ * deleted is dropped. The remaining watches are closed by {@link #close()}, run on shutdown.
+ * </p>
+ */
+@Slf4j
+public class ZkServiceInstanceCache {
+
+    private static final long DEFAULT_INIT_TIMEOUT_MS = 3000L;
+    /**
+     * highest registered weight, 100 times the default; larger ones are read as this
+     */
+    private static final int MAX_WEIGHT = 10000;
+
+    private final Map<String, ServiceWatch> watches = new ConcurrentHashMap<>();
+    private final BiConsumer<String, ServiceInstances> changeListener;
+    private final long initTimeoutMs;
+    private volatile boolean closed;
+
+    /**
+     * @param changeListener called with the new snapshot whenever the instance list of a service changes
+     */
+    public ZkServiceInstanceCache(BiConsumer<String, ServiceInstances> changeListener) {
+        this.changeListener = changeListener;
+        this.initTimeoutMs = ConfigResolver.getLong(RpcConfigEnum.ZK_DISCOVERY_INIT_TIMEOUT_MS.getPropertyValue(), DEFAULT_INIT_TIMEOUT_MS);
+    }
+
+    /**
+     * @param rpcServiceName rpc service name eg:org.tic.HelloServicetest2version1
+     * @return the current instances of the service, empty if it has none
+     */
+    public ServiceInstances get(String rpcServiceName) {
+        ServiceWatch watch = watches.get(rpcServiceName);
+        if (watch == null) {
+            if (closed || !exists(rpcServiceName)) {
+                return ServiceInstances.EMPTY;
+            }
+            watch = watches.computeIfAbsent(rpcServiceName, ServiceWatch::new);
+        }
+        return watch.await(initTimeoutMs);
+    }
+
+    /**
+     * Stop watching every service
+     */
+    public void close() {
+        closed = true;
+        for (ServiceWatch watch : watches.values()) {
+            watch.cache.close();
+        }
+        watches.clear();
+        log.info("Closed zookeeper watches of looked up services");
+    }
+
+    private static boolean exists(String rpcServiceName) {
+        String servicePath = CuratorUtils.ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName;
+        try {
+            return CuratorUtils.getZkClient().checkExists().forPath(servicePath) != null;
+        } catch (Exception e) {
+            log.error("check exists for path [{}] fail", servicePath);
+            return false;
+        }
+    }
+
+    private final class ServiceWatch {
+        private final String rpcServiceName;
+        private final String servicePath;
+        private final CuratorCache cache;
+        private final CountDownLatch initialized = new CountDownLatch(1);
+        private volatile ServiceInstances snapshot = ServiceInstances.EMPTY;
+
+        private ServiceWatch(String rpcServiceName) {
+            this.rpcServiceName = rpcServiceName;
+            this.servicePath = CuratorUtils.ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName;
+            this.cache = CuratorCache.build(CuratorUtils.getZkClient(), servicePath);
+            CuratorCacheListener listener = CuratorCacheListener.builder()
+                    .forAll((type, oldData, data) -> {
+                        // the initial load is applied once, when it is complete
+                        if (initialized.getCount() == 0) {
+                            rebuild();
+                        }
+                        if (type == CuratorCacheListener.Type.NODE_DELETED && servicePath.equals(oldData.getPath())) {
+                            log.info("Service [{}] removed from zookeeper, stop watching it", rpcServiceName);
+                            watches.remove(rpcServiceName, this);
+                            cache.close();
+                        }
+                    })
+                    .forInitialized(() -> {
+                        rebuild();
+                        initialized.countDown();
+                    })
+                    .build();
+            cache.listenable().addListener(listener);
+            cache.start();
+        }
+
+        private ServiceInstances await(long timeoutMs) {
+            if (initialized.getCount() > 0) {
+                try {
+                    if (!initialized.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                        log.warn("Instances of service [{}] not loaded from zookeeper within {}ms", rpcServiceName, timeoutMs);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return snapshot;
+        }
+
+        private void rebuild() {
+            List<String> serviceUrls = new ArrayList<>();
+            Map<String, Integer> weights = new HashMap<>();
+            cache.stream()
+                    .filter(child -> ZKPaths.getPathAndNode(child.getPath()).getPath().equals(servicePath))
+                    .forEach(child -> {
+                        String serviceUrl = ZKPaths.getNodeFromPath(child.getPath());
+                        serviceUrls.add(serviceUrl);
+                        int weight = parseWeight(child);
+                        if (weight > 0) {
+                            weights.put(serviceUrl, weight);
+                        }
+                    });
+            serviceUrls.sort(null);
+            ServiceInstances previous = snapshot;
+            snapshot = new ServiceInstances(serviceUrls, weights);
+            if (!previous.getServiceUrls().equals(serviceUrls)) {
+                log.info("Instances of service [{}] changed: {}", rpcServiceName, serviceUrls);
+                changeListener.accept(rpcServiceName, snapshot);
+            }
+        }
+
+        private int parseWeight(ChildData child) {
+            byte[] data = child.getData();
+            if (data == null || data.length == 0) {
+                return 0;
+            }
+            try {
+                int weight = Integer.parseInt(new String(data, StandardCharsets.UTF_8).trim());
+                if (weight > MAX_WEIGHT) {
+                    log.warn("Weight {} of instance [{}] is above {}, capped", weight, child.getPath(), MAX_WEIGHT);
+                    return MAX_WEIGHT;
+                }
+                return weight;
+            } catch (NumberFormatException e) {
+                log.warn("Ignore malformed weight data of instance [{}]", child.getPath());
+                return 0;
+            }
+        }
+    }
+}
@@ -7,8 +7,6 @@ import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.framework.imps.CuratorFrameworkState;
 import org.apache.curator.framework.state.ConnectionState;
 import org.apache.curator.framework.state.ConnectionStateListener;
-import org.apache.curator.framework.recipes.cache.PathChildrenCache;
-import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.zookeeper.CreateMode;
 import org.tic.config.ConfigResolver;
@@ -31,13 +29,10 @@ public final class CuratorUtils {
     private static final int BASE_SLEEP_TIME = 1000;
     private static final int MAX_RETRIES = 3;
     public static final String ZK_REGISTER_ROOT_PATH = "/my-rpc";
-    private static final Map<String, List<String>> SERVICE_ADDRESS_MAP = new ConcurrentHashMap<>();
-    private static final Map<String, Long> SERVICE_ADDRESS_CACHE_TIME = new ConcurrentHashMap<>();
     private static final Set<String> REGISTERED_PATH_SET = ConcurrentHashMap.newKeySet();
     private static final Map<String, byte[]> REGISTERED_NODE_DATA = new ConcurrentHashMap<>();
     private static CuratorFramework zkClient;
     private static final String DEFAULT_ZOOKEEPER_ADDRESS = "127.0.0.1:2181";
-    private static final long DEFAULT_CACHE_TTL_MS = 5000L;
 
     private CuratorUtils() {
     }
@@ -104,31 +99,18 @@ public final class CuratorUtils {
     }
 
     /**
-     * Gets the children under a node
+     * Gets the children under a node, straight from zookeeper. Discovery does not call this,
+     * it is served by {@link org.tic.registry.zk.ZkServiceInstanceCache}
      *
      * @param rpcServiceName rpc service name eg:org.tic.HelloServicetest2version1
      * @return All child nodes under the specified node
      */
     public static List<String> getChildrenNodes(CuratorFramework zkClient, String rpcServiceName) {
         String servicePath = ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName;
-        long ttlMs = getCacheTtlMs();
-        Long lastUpdate = SERVICE_ADDRESS_CACHE_TIME.get(rpcServiceName);
-        List<String> cached = SERVICE_ADDRESS_MAP.get(rpcServiceName);
-        long now = System.currentTimeMillis();
-        if (cached != null && lastUpdate != null && (now - lastUpdate) <= ttlMs) {
-            return cached;
-        }
         try {
-            List<String> result = zkClient.getChildren().forPath(servicePath);
-            SERVICE_ADDRESS_MAP.put(rpcServiceName, result);
-            SERVICE_ADDRESS_CACHE_TIME.put(rpcServiceName, now);
-            registerWatcher(rpcServiceName, zkClient);
-            return result;
+            return zkClient.getChildren().forPath(servicePath);
         } catch (Exception e) {
-            log.error("get children nodes for path [{}] fail, try fallback to cache", servicePath);
-            if (cached != null) {
-                return cached;
-            }
+            log.error("get children nodes for path [{}] fail", servicePath);
             return null;
         }
     }
@@ -197,23 +179,6 @@ public final class CuratorUtils {
         return zkClient;
     }
 
-    /**
-     * Registers to listen for changes to the specified node
-     *
-     * @param rpcServiceName rpc service name eg:org.tic.HelloServicetest2version
-     */
-    private static void registerWatcher(String rpcServiceName, CuratorFramework zkClient) throws Exception {
-        String servicePath = ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName;
-        PathChildrenCache pathChildrenCache = new PathChildrenCache(zkClient, servicePath, true);
-        PathChildrenCacheListener pathChildrenCacheListener = (curatorFramework, pathChildrenCacheEvent) -> {
-            List<String> serviceAddresses = curatorFramework.getChildren().forPath(servicePath);
-            SERVICE_ADDRESS_MAP.put(rpcServiceName, serviceAddresses);
-            SERVICE_ADDRESS_CACHE_TIME.put(rpcServiceName, System.currentTimeMillis());
-        };
-        pathChildrenCache.getListenable().addListener(pathChildrenCacheListener);
-        pathChildrenCache.start();
-    }
-
     public static byte[] getNodeData(CuratorFramework zkClient, String path) {
         try {
             return zkClient.getData().forPath(path);
@@ -222,8 +187,4 @@ public final class CuratorUtils {
         }
     }
 
-    private static long getCacheTtlMs() {
-        return ConfigResolver.getLong(RpcConfigEnum.ZK_CACHE_TTL_MS.getPropertyValue(), DEFAULT_CACHE_TTL_MS);
-    }
-
 }
@@ -0,0 +1,62 @@
+package org.tic.remoting.dto;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Identity of a remote method (service name, group, version, method name and parameter types),
+ * used to look up the ids negotiated in the method table.
+ */
+public final class MethodKey {
+    private final String interfaceName;
+    private final String group;
+    private final String version;
+    private final String methodName;
+    private final Class<?>[] paramTypes;
+    private final int hash;
+
+    private MethodKey(String interfaceName, String group, String version, String methodName, Class<?>[] paramTypes) {
+        this.interfaceName = interfaceName;
+        this.group = group;
+        this.version = version;
+        this.methodName = methodName;
+        this.paramTypes = paramTypes;
+        this.hash = Objects.hash(interfaceName, group, version, methodName) * 31 + Arrays.hashCode(paramTypes);
+    }
+
+    public static MethodKey of(String interfaceName, String group, String version, String methodName, Class<?>[] paramTypes) {
+        return new MethodKey(interfaceName, group, version, methodName, paramTypes);
+    }
+
+    public static MethodKey of(RpcRequest rpcRequest) {
+        return new MethodKey(rpcRequest.getInterfaceName(), rpcRequest.getGroup(), rpcRequest.getVersion(),
+                rpcRequest.getMethodName(), rpcRequest.getParamTypes());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MethodKey)) {
+            return false;
+        }
+        MethodKey that = (MethodKey) o;
+        return hash == that.hash
+                && Objects.equals(methodName, that.methodName)
+                && Objects.equals(interfaceName, that.interfaceName)
+                && Objects.equals(group, that.group)
+                && Objects.equals(version, that.version)
+                && Arrays.equals(paramTypes, that.paramTypes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return interfaceName + group + version + "#" + methodName + Arrays.toString(paramTypes);
+    }
+}
@@ -27,7 +27,7 @@ public class RpcMessage {
      */
     private byte compress;
     /**
-     * request id
+     * request id, unique per connection, the response carries the id of its request
      */
     private int requestId;
     /**
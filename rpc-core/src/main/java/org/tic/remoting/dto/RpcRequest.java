@@ -15,15 +15,26 @@ import java.io.Serializable;
 @ToString
 public class RpcRequest implements Serializable {
     private static final long serialVersionUID = 1905122041950251207L;
-    private String requestId;
     private String interfaceName;
     private String methodName;
     private Object[] parameters;
     private Class<?>[] paramTypes;
     private String version;
     private String group;
+    /**
+     * ids negotiated through the server's method table, 0 when the request carries the names instead
+     */
+    private int serviceId;
+    private int methodId;
 
     public String getRpcServiceName() {
         return this.getInterfaceName() + this.getGroup() + this.getVersion();
     }
+
+    /**
+     * @return true if the method is referenced by (serviceId, methodId) instead of by name
+     */
+    public boolean hasMethodRef() {
+        return serviceId > 0;
+    }
 }
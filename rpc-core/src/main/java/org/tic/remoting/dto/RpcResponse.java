@@ -18,7 +18,6 @@ import java.io.Serializable;
 public class RpcResponse<T> implements Serializable {
 
     private static final long serialVersionUID = 715745410605631233L;
-    private String requestId;
     /**
      * response code
      */
@@ -31,12 +30,21 @@ public class RpcResponse<T> implements Serializable {
      * response body
      */
     private T data;
+    /**
+     * method table ids the server assigned to the called method, only set when the request was sent by name,
+     * so the client can reference the method by id on this connection from then on
+     */
+    private int serviceId;
+    private int methodId;
+    /**
+     * with {@link RpcResponseCodeEnum#TOO_MANY_REQUESTS}: how long the client should wait before retrying, 0 if unknown
+     */
+    private long retryAfterMs;
 
-    public static <T> RpcResponse<T> success(T data, String requestId) {
+    public static <T> RpcResponse<T> success(T data) {
         RpcResponse<T> response = new RpcResponse<>();
         response.setCode(RpcResponseCodeEnum.SUCCESS.getCode());
         response.setMessage(RpcResponseCodeEnum.SUCCESS.getMessage());
-        response.setRequestId(requestId);
         if (null != data) {
             response.setData(data);
         }
@@ -0,0 +1,42 @@
+package org.tic.remoting.handler;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Pre-bound invoker of one service method. The {@link MethodHandle} is bound to the service object and adapted to
+ * {@code (Object[]) -> Object} once, so a call is a single {@code invokeExact} without reflective lookup or access checks.
+ */
+public final class MethodInvoker {
+
+    private static final MethodType GENERIC_TYPE = MethodType.methodType(Object.class, Object[].class);
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final MethodHandle handle;
+
+    private MethodInvoker(MethodHandle handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * @throws IllegalAccessException if the method is not accessible, e.g. declared by a non-public class
+     */
+    public static MethodInvoker of(Object service, Method method) throws IllegalAccessException {
+        MethodHandle handle = MethodHandles.lookup().unreflect(method)
+                .bindTo(service)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(GENERIC_TYPE);
+        return new MethodInvoker(handle);
+    }
+
+    /**
+     * @param args method arguments, may be null for a method without parameters
+     * @return the method result, boxed if primitive
+     * @throws Throwable whatever the target method throws, unwrapped
+     */
+    public Object invoke(Object[] args) throws Throwable {
+        return handle.invokeExact(args == null ? NO_ARGS : args);
+    }
+}
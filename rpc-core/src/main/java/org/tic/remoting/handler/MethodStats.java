@@ -0,0 +1,43 @@
+package org.tic.remoting.handler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution time of one service method, measured around the invocation on the thread that runs it.
+ * For a {@link org.tic.annotation.NonBlocking} method, runs slower than the inline budget are counted separately:
+ * they held up an IO thread and every other connection it serves.
+ */
+public final class MethodStats {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder slowInlineCalls = new LongAdder();
+
+    public void record(long elapsedNanos) {
+        calls.increment();
+        totalNanos.add(elapsedNanos);
+        maxNanos.accumulate(elapsedNanos);
+    }
+
+    /**
+     * @return the number of slow inline runs so far, including this one
+     */
+    public long recordSlowInline() {
+        slowInlineCalls.increment();
+        return slowInlineCalls.sum();
+    }
+
+    public Map<String, Object> snapshot() {
+        long count = calls.sum();
+        Map<String, Object> result = new HashMap<>();
+        result.put("calls", count);
+        result.put("avgMicros", count == 0 ? 0 : totalNanos.sum() / count / 1000);
+        result.put("maxMicros", maxNanos.get() / 1000);
+        result.put("slowInlineCalls", slowInlineCalls.sum());
+        return result;
+    }
+}
@@ -0,0 +1,162 @@
+package org.tic.remoting.handler;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.tic.annotation.NonBlocking;
+import org.tic.config.RpcServiceConfig;
+import org.tic.exception.RpcException;
+import org.tic.remoting.dto.MethodKey;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Server side table of service methods. The methods of a service interface are registered when the service is
+ * published, each one with a (serviceId, methodId) pair and a pre-bound {@link MethodInvoker}. The ids are sent back
+ * in the response to the first call by name; later requests on that connection carry only the ids and are resolved
+ * with two array reads. Methods not found at publish time are registered on their first call.
+ * <p>
+ * Ids start at 1, 0 means "not assigned". Registration is rare and copy-on-write, lookups take no lock.
+ * </p>
+ */
+@Slf4j
+public class MethodTable {
+
+    private final Map<MethodKey, Entry> byKey = new ConcurrentHashMap<>();
+    private final Map<String, Integer> serviceIds = new ConcurrentHashMap<>();
+    private volatile Entry[][] entries = new Entry[1][];
+
+    /**
+     * @return the entry registered for the key, or null if the method has not been called by name yet
+     */
+    public Entry get(MethodKey key) {
+        return byKey.get(key);
+    }
+
+    /**
+     * Register every method of the published service interface
+     */
+    public void registerService(RpcServiceConfig rpcServiceConfig) {
+        Object service = rpcServiceConfig.getService();
+        Class<?> serviceInterface = service.getClass().getInterfaces()[0];
+        String rpcServiceName = rpcServiceConfig.getRpcServiceName();
+        for (Method method : serviceInterface.getMethods()) {
+            MethodKey key = MethodKey.of(rpcServiceConfig.getServiceName(), rpcServiceConfig.getGroup(), rpcServiceConfig.getVersion(),
+                    method.getName(), method.getParameterTypes());
+            try {
+                register(key, rpcServiceName, service, method);
+            } catch (IllegalAccessException e) {
+                log.warn("Method [{}] of service [{}] is not accessible, it is resolved on first call instead", method, rpcServiceName);
+            }
+        }
+    }
+
+    /**
+     * Register a method, returns the existing entry if it was registered already
+     *
+     * @throws IllegalAccessException if no invoker can be bound to the method
+     */
+    public synchronized Entry register(MethodKey key, String rpcServiceName, Object service, Method method) throws IllegalAccessException {
+        Entry entry = byKey.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        MethodInvoker invoker = MethodInvoker.of(service, method);
+        Entry[][] table = entries;
+        Integer serviceId = serviceIds.get(rpcServiceName);
+        if (serviceId == null) {
+            serviceId = table.length;
+            table = Arrays.copyOf(table, serviceId + 1);
+            table[serviceId] = new Entry[1];
+            serviceIds.put(rpcServiceName, serviceId);
+        } else {
+            table = table.clone();
+        }
+        Entry[] methods = table[serviceId];
+        int methodId = methods.length;
+        methods = Arrays.copyOf(methods, methodId + 1);
+        entry = new Entry(serviceId, methodId, rpcServiceName, method, invoker, isNonBlocking(service, method));
+        methods[methodId] = entry;
+        table[serviceId] = methods;
+        entries = table;
+        byKey.put(key, entry);
+        return entry;
+    }
+
+    public Entry resolve(int serviceId, int methodId) {
+        Entry[][] table = entries;
+        if (serviceId > 0 && serviceId < table.length) {
+            Entry[] methods = table[serviceId];
+            if (methodId > 0 && methodId < methods.length) {
+                return methods[methodId];
+            }
+        }
+        throw new RpcException("Unknown method reference: " + serviceId + "/" + methodId);
+    }
+
+    /**
+     * Execution time of every registered method, keyed by service name and method signature
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new HashMap<>();
+        for (Entry entry : byKey.values()) {
+            String params = Arrays.stream(entry.method.getParameterTypes()).map(Class::getSimpleName).collect(Collectors.joining(","));
+            result.put(entry.rpcServiceName + "#" + entry.method.getName() + "(" + params + ")", entry.stats.snapshot());
+        }
+        return result;
+    }
+
+    /**
+     * {@link NonBlocking} may be declared on the method of the service interface or on the implementation
+     */
+    private static boolean isNonBlocking(Object service, Method method) {
+        if (method.isAnnotationPresent(NonBlocking.class)) {
+            return true;
+        }
+        Class<?> serviceClass = service.getClass();
+        if (isAnnotated(serviceClass, method)) {
+            return true;
+        }
+        for (Class<?> serviceInterface : serviceClass.getInterfaces()) {
+            if (isAnnotated(serviceInterface, method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAnnotated(Class<?> type, Method method) {
+        try {
+            return type.getMethod(method.getName(), method.getParameterTypes()).isAnnotationPresent(NonBlocking.class);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @Getter
+    public static final class Entry {
+        private final int serviceId;
+        private final int methodId;
+        private final String rpcServiceName;
+        private final Method method;
+        private final MethodInvoker invoker;
+        /**
+         * declared {@link NonBlocking}: may run on the IO thread
+         */
+        private final boolean nonBlocking;
+        private final MethodStats stats = new MethodStats();
+
+        private Entry(int serviceId, int methodId, String rpcServiceName, Method method, MethodInvoker invoker, boolean nonBlocking) {
+            this.serviceId = serviceId;
+            this.methodId = methodId;
+            this.rpcServiceName = rpcServiceName;
+            this.method = method;
+            this.invoker = invoker;
+            this.nonBlocking = nonBlocking;
+        }
+    }
+}
@@ -5,9 +5,9 @@ import org.tic.exception.RpcException;
 import org.tic.factory.SingletonFactory;
 import org.tic.provider.ServiceProvider;
 import org.tic.provider.impl.ZkServiceProviderImpl;
+import org.tic.remoting.dto.MethodKey;
 import org.tic.remoting.dto.RpcRequest;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 /**
@@ -17,35 +17,64 @@ import java.lang.reflect.Method;
 @Slf4j
 public class RpcRequestHandler {
     private final ServiceProvider serviceProvider;
+    private final MethodTable methodTable;
 
     public RpcRequestHandler() {
         serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
+        methodTable = SingletonFactory.getInstance(MethodTable.class);
     }
 
     /**
      * Processing rpcRequest: call the corresponding method, and then return the method
      */
     public Object handle(RpcRequest rpcRequest) {
-        Object service = serviceProvider.getService(rpcRequest.getRpcServiceName());
-        return invokeTargetMethod(rpcRequest, service);
+        return invoke(resolve(rpcRequest), rpcRequest);
+    }
+
+    /**
+     * Find the target method, either by the (serviceId, methodId) pair or by name.
+     * A method resolved by name is registered in the method table so later calls can use its ids.
+     *
+     * @param rpcRequest client request
+     * @return the method table entry of the target method
+     */
+    public MethodTable.Entry resolve(RpcRequest rpcRequest) {
+        if (rpcRequest.hasMethodRef()) {
+            return methodTable.resolve(rpcRequest.getServiceId(), rpcRequest.getMethodId());
+        }
+        MethodKey key = MethodKey.of(rpcRequest);
+        MethodTable.Entry entry = methodTable.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        String rpcServiceName = rpcRequest.getRpcServiceName();
+        Object service = serviceProvider.getService(rpcServiceName);
+        try {
+            Method method = service.getClass().getMethod(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
+            return methodTable.register(key, rpcServiceName, service, method);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new RpcException(e.getMessage(), e);
+        }
     }
 
     /**
      * get method execution results
      *
+     * @param entry      method table entry of the target method
      * @param rpcRequest client request
-     * @param service    service object
      * @return the result of the target method execution
      */
-    private Object invokeTargetMethod(RpcRequest rpcRequest, Object service) {
+    public Object invoke(MethodTable.Entry entry, RpcRequest rpcRequest) {
         Object result;
         try {
-            Method method = service.getClass().getMethod(rpcRequest.getMethodName(), rpcRequest.getParamTypes());
-            result = method.invoke(service, rpcRequest.getParameters());
-            log.info("service:[{}] successful invoke method:[{}]", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
-        } catch (NoSuchMethodException | IllegalArgumentException | InvocationTargetException | IllegalAccessException e) {
+            result = entry.getInvoker().invoke(rpcRequest.getParameters());
+            log.info("service:[{}] successful invoke method:[{}]", entry.getRpcServiceName(), entry.getMethod().getName());
+        } catch (Error e) {
+            // passed on unwrapped, the caller answers the client and decides whether the thread survives it
+            throw e;
+        } catch (Throwable e) {
             throw new RpcException(e.getMessage(), e);
         }
         return result;
     }
-}
\ No newline at end of file
+}
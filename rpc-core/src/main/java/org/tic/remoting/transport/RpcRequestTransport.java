@@ -1,5 +1,6 @@
 package org.tic.remoting.transport;
 
+import org.tic.config.RpcServiceConfig;
 import org.tic.extension.SPI;
 import org.tic.remoting.dto.RpcRequest;
 
@@ -16,4 +17,15 @@ public interface RpcRequestTransport {
      * @return data from server
      */
     Object sendRpcRequest(RpcRequest rpcRequest);
+
+    /**
+     * send rpc request to server with the service level settings of the caller, such as serialization
+     *
+     * @param rpcRequest       message body
+     * @param rpcServiceConfig rpc service related attributes
+     * @return data from server
+     */
+    default Object sendRpcRequest(RpcRequest rpcRequest, RpcServiceConfig rpcServiceConfig) {
+        return sendRpcRequest(rpcRequest);
+    }
 }
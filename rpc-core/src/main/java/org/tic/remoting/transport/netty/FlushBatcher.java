@@ -0,0 +1,123 @@
+package org.tic.remoting.transport.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.AttributeKey;
+import io.netty.util.internal.PlatformDependent;
+import lombok.extern.slf4j.Slf4j;
+import org.tic.config.ConfigResolver;
+import org.tic.enums.RpcConfigEnum;
+
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces the writes of one channel into fewer flushes.
+ * <p>
+ * Messages written from any thread are queued, and a single task on the channel's event loop writes everything
+ * queued up to that point and flushes once, so all writes issued within one event loop tick share one syscall.
+ * A batch is flushed early after {@code rpc.flush.batch.max.messages} messages or {@code rpc.flush.batch.max.bytes}
+ * encoded bytes, and the rest is left for a new task so reads on the same loop are not starved.
+ * With {@code rpc.flush.batch.enabled=false} every write is flushed right away.
+ * </p>
+ */
+@Slf4j
+public final class FlushBatcher {
+
+    private static final AttributeKey<FlushBatcher> KEY = AttributeKey.valueOf("flushBatcher");
+    private static final boolean ENABLED = ConfigResolver.getBoolean(RpcConfigEnum.FLUSH_BATCH_ENABLED.getPropertyValue(), true);
+    private static final int MAX_MESSAGES = ConfigResolver.getInt(RpcConfigEnum.FLUSH_BATCH_MAX_MESSAGES.getPropertyValue(), 128);
+    private static final long MAX_BYTES = ConfigResolver.getLong(RpcConfigEnum.FLUSH_BATCH_MAX_BYTES.getPropertyValue(), 64 * 1024L);
+
+    private final Channel channel;
+    private final Queue<PendingWrite> queue = PlatformDependent.newMpscQueue();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable drainTask = this::drain;
+
+    private FlushBatcher(Channel channel) {
+        this.channel = channel;
+    }
+
+    public static FlushBatcher of(Channel channel) {
+        FlushBatcher batcher = channel.attr(KEY).get();
+        if (batcher == null) {
+            FlushBatcher created = new FlushBatcher(channel);
+            batcher = channel.attr(KEY).setIfAbsent(created);
+            if (batcher == null) {
+                batcher = created;
+            }
+        }
+        return batcher;
+    }
+
+    /**
+     * Queue {@code msg} for the next flush of this channel
+     *
+     * @return future completed once the message is written
+     */
+    public ChannelFuture write(Object msg) {
+        if (!ENABLED) {
+            return channel.writeAndFlush(msg);
+        }
+        ChannelPromise promise = channel.newPromise();
+        queue.offer(new PendingWrite(msg, promise));
+        schedule();
+        return promise;
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            channel.eventLoop().execute(drainTask);
+        } catch (RejectedExecutionException e) {
+            // event loop is shutting down, nothing will write these anymore
+            scheduled.set(false);
+            failPending(e);
+        }
+    }
+
+    private void drain() {
+        ChannelOutboundBuffer outboundBuffer = channel.unsafe().outboundBuffer();
+        long startBytes = outboundBuffer == null ? 0 : outboundBuffer.totalPendingWriteBytes();
+        int written = 0;
+        PendingWrite pending;
+        while ((pending = queue.poll()) != null) {
+            channel.write(pending.msg, pending.promise);
+            written++;
+            if (written >= MAX_MESSAGES
+                    || outboundBuffer != null && outboundBuffer.totalPendingWriteBytes() - startBytes >= MAX_BYTES) {
+                break;
+            }
+        }
+        if (written > 0) {
+            channel.flush();
+        }
+        scheduled.set(false);
+        // anything left over, or queued after the last poll, gets its own task
+        if (!queue.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void failPending(Throwable cause) {
+        PendingWrite pending;
+        while ((pending = queue.poll()) != null) {
+            pending.promise.tryFailure(cause);
+        }
+    }
+
+    private static final class PendingWrite {
+        private final Object msg;
+        private final ChannelPromise promise;
+
+        private PendingWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+}
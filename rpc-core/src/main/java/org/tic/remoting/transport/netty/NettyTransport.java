@@ -0,0 +1,190 @@
+package org.tic.remoting.transport.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.ResourceLeakDetector;
+import lombok.extern.slf4j.Slf4j;
+import org.tic.config.ConfigResolver;
+import org.tic.enums.RpcConfigEnum;
+
+import java.util.Locale;
+
+/**
+ * Picks the netty transport for client and server.
+ * <p>
+ * {@code rpc.transport=auto} (default) uses the native epoll transport when it can be loaded (Linux with the
+ * netty-transport-native-epoll jar of the platform) and NIO otherwise, {@code epoll} asks for epoll but still falls back,
+ * {@code nio} always uses NIO. On epoll, sockets run edge-triggered with TCP_QUICKACK, TCP fast open is enabled unless
+ * {@code rpc.transport.tcp.fastopen=false}, and the server can bind one listening socket per accept thread with SO_REUSEPORT.
+ * </p>
+ * <p>
+ * Every channel also gets the same buffer profile: the pooled direct allocator ({@code rpc.transport.allocator}),
+ * adaptive receive buffer sizing between {@code rpc.transport.rcvbuf.min} and {@code rpc.transport.rcvbuf.max} bytes,
+ * write buffer water marks ({@code rpc.transport.write.buffer.low/high}) that turn {@code channel.isWritable()} off
+ * while a peer is not reading, and optionally fixed SO_SNDBUF/SO_RCVBUF sizes. Usage is exported by {@link TransportMetrics}.
+ * </p>
+ */
+@Slf4j
+public final class NettyTransport {
+
+    private static final String TRANSPORT_EPOLL = "epoll";
+    private static final String TRANSPORT_NIO = "nio";
+    /**
+     * Pending TCP fast open requests the server queues
+     */
+    private static final int FASTOPEN_QUEUE = 256;
+
+    private static final String ALLOCATOR_UNPOOLED = "unpooled";
+
+    private static final boolean EPOLL = resolveEpoll();
+    private static final ByteBufAllocator ALLOCATOR = resolveAllocator();
+    private static final RecvByteBufAllocator RCVBUF_ALLOCATOR = new AdaptiveRecvByteBufAllocator(
+            ConfigResolver.getInt(RpcConfigEnum.TRANSPORT_RCVBUF_MIN.getPropertyValue(), 64),
+            ConfigResolver.getInt(RpcConfigEnum.TRANSPORT_RCVBUF_INITIAL.getPropertyValue(), 2048),
+            ConfigResolver.getInt(RpcConfigEnum.TRANSPORT_RCVBUF_MAX.getPropertyValue(), 65536));
+    private static final WriteBufferWaterMark WATER_MARK = new WriteBufferWaterMark(
+            ConfigResolver.getInt(RpcConfigEnum.TRANSPORT_WRITE_BUFFER_LOW.getPropertyValue(), 32 * 1024),
+            ConfigResolver.getInt(RpcConfigEnum.TRANSPORT_WRITE_BUFFER_HIGH.getPropertyValue(), 64 * 1024));
+    /**
+     * socket buffer sizes, 0 leaves them to the kernel's auto tuning
+     */
+    private static final int SO_SNDBUF = ConfigResolver.getInt(RpcConfigEnum.TRANSPORT_SO_SNDBUF.getPropertyValue(), 0);
+    private static final int SO_RCVBUF = ConfigResolver.getInt(RpcConfigEnum.TRANSPORT_SO_RCVBUF.getPropertyValue(), 0);
+    private static final boolean FASTOPEN = ConfigResolver.getBoolean(RpcConfigEnum.TRANSPORT_TCP_FASTOPEN.getPropertyValue(), true);
+
+    private NettyTransport() {
+    }
+
+    public static boolean isEpoll() {
+        return EPOLL;
+    }
+
+    public static ByteBufAllocator allocator() {
+        return ALLOCATOR;
+    }
+
+    /**
+     * @param threads event loop threads, 0 for netty's default of twice the cores
+     */
+    public static EventLoopGroup newEventLoopGroup(int threads) {
+        if (EPOLL) {
+            return threads > 0 ? new EpollEventLoopGroup(threads) : new EpollEventLoopGroup();
+        }
+        return threads > 0 ? new NioEventLoopGroup(threads) : new NioEventLoopGroup();
+    }
+
+    public static Class<? extends SocketChannel> socketChannelClass() {
+        return EPOLL ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    public static Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+        return EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    /**
+     * Several server sockets may bind the same port, each accepting on its own event loop
+     */
+    public static boolean supportsReusePort() {
+        return EPOLL;
+    }
+
+    public static void configureServer(ServerBootstrap bootstrap, boolean reusePort) {
+        bootstrap.channel(serverSocketChannelClass())
+                .option(ChannelOption.ALLOCATOR, ALLOCATOR)
+                .childOption(ChannelOption.ALLOCATOR, ALLOCATOR)
+                .childOption(ChannelOption.RCVBUF_ALLOCATOR, RCVBUF_ALLOCATOR)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, WATER_MARK);
+        if (SO_SNDBUF > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, SO_SNDBUF);
+        }
+        if (SO_RCVBUF > 0) {
+            // set on the listening socket so accepted sockets inherit it before the handshake sizes the window
+            bootstrap.option(ChannelOption.SO_RCVBUF, SO_RCVBUF);
+        }
+        if (!EPOLL) {
+            return;
+        }
+        bootstrap.option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+                .childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+                .childOption(EpollChannelOption.TCP_QUICKACK, true);
+        if (reusePort) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        if (FASTOPEN) {
+            bootstrap.option(ChannelOption.TCP_FASTOPEN, FASTOPEN_QUEUE);
+        }
+    }
+
+    public static void configureClient(Bootstrap bootstrap) {
+        bootstrap.channel(socketChannelClass())
+                // requests are small and latency bound, do not let Nagle hold them back waiting for the server's ACK
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.ALLOCATOR, ALLOCATOR)
+                .option(ChannelOption.RCVBUF_ALLOCATOR, RCVBUF_ALLOCATOR)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, WATER_MARK);
+        if (SO_SNDBUF > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, SO_SNDBUF);
+        }
+        if (SO_RCVBUF > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, SO_RCVBUF);
+        }
+        if (!EPOLL) {
+            return;
+        }
+        bootstrap.option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED)
+                .option(EpollChannelOption.TCP_QUICKACK, true);
+        if (FASTOPEN) {
+            bootstrap.option(ChannelOption.TCP_FASTOPEN_CONNECT, true);
+        }
+    }
+
+    private static ByteBufAllocator resolveAllocator() {
+        String leakDetection = ConfigResolver.getString(RpcConfigEnum.TRANSPORT_LEAK_DETECTION.getPropertyValue(), null);
+        if (leakDetection != null) {
+            try {
+                ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.valueOf(leakDetection.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                log.warn("Unknown leak detection level [{}], keeping {}", leakDetection, ResourceLeakDetector.getLevel());
+            }
+        }
+        if (ALLOCATOR_UNPOOLED.equalsIgnoreCase(ConfigResolver.getString(RpcConfigEnum.TRANSPORT_ALLOCATOR.getPropertyValue(), "pooled"))) {
+            return UnpooledByteBufAllocator.DEFAULT;
+        }
+        return PooledByteBufAllocator.DEFAULT;
+    }
+
+    private static boolean resolveEpoll() {
+        String transport = ConfigResolver.getString(RpcConfigEnum.TRANSPORT.getPropertyValue(), "auto").toLowerCase(Locale.ROOT);
+        if (TRANSPORT_NIO.equals(transport)) {
+            return false;
+        }
+        boolean available = Epoll.isAvailable();
+        if (available) {
+            log.info("Using native epoll transport");
+        } else if (TRANSPORT_EPOLL.equals(transport)) {
+            log.warn("Epoll transport requested but unavailable, falling back to NIO", Epoll.unavailabilityCause());
+        } else {
+            log.info("Native epoll transport unavailable, using NIO: {}", Epoll.unavailabilityCause().toString());
+        }
+        return available;
+    }
+}
@@ -0,0 +1,79 @@
+package org.tic.remoting.transport.netty;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import io.netty.util.internal.PlatformDependent;
+import lombok.extern.slf4j.Slf4j;
+import org.tic.config.ConfigResolver;
+import org.tic.enums.RpcConfigEnum;
+import org.tic.utils.CodecMetrics;
+import org.tic.utils.threadpoolutils.ThreadPoolFactoryUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffer memory of the rpc transport: what the channel allocator holds, the direct memory netty has reserved in total
+ * against its limit, and how often channels went unwritable because their outbound buffer passed the high water mark.
+ * Logged together with {@link CodecMetrics} when the server shuts down, and every
+ * {@code rpc.transport.metrics.log.interval.ms} if set.
+ */
+@Slf4j
+public final class TransportMetrics {
+
+    private static final LongAdder UNWRITABLE = new LongAdder();
+    private static final AtomicBoolean LOGGING_STARTED = new AtomicBoolean();
+
+    private TransportMetrics() {
+    }
+
+    /**
+     * Record a channel whose outbound buffer went above the high water mark
+     */
+    public static void recordUnwritable() {
+        UNWRITABLE.increment();
+    }
+
+    /**
+     * Start logging the metrics every {@code rpc.transport.metrics.log.interval.ms}, once per process
+     */
+    public static void startLogging() {
+        long intervalMs = ConfigResolver.getLong(RpcConfigEnum.TRANSPORT_METRICS_LOG_INTERVAL_MS.getPropertyValue(), 0L);
+        if (intervalMs <= 0 || !LOGGING_STARTED.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                ThreadPoolFactoryUtil.createThreadFactory("transport-metrics", true));
+        scheduler.scheduleAtFixedRate(TransportMetrics::log, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static void log() {
+        log.info("transport metrics: {}, codec metrics: {}", snapshot(), CodecMetrics.snapshot());
+    }
+
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> result = new HashMap<>();
+        ByteBufAllocator allocator = NettyTransport.allocator();
+        if (allocator instanceof ByteBufAllocatorMetricProvider) {
+            result.put("allocatorUsedDirectMemory", ((ByteBufAllocatorMetricProvider) allocator).metric().usedDirectMemory());
+            result.put("allocatorUsedHeapMemory", ((ByteBufAllocatorMetricProvider) allocator).metric().usedHeapMemory());
+        }
+        if (allocator instanceof PooledByteBufAllocator) {
+            PooledByteBufAllocatorMetric metric = ((PooledByteBufAllocator) allocator).metric();
+            result.put("directArenas", metric.numDirectArenas());
+            result.put("threadLocalCaches", metric.numThreadLocalCaches());
+            result.put("pinnedDirectMemory", ((PooledByteBufAllocator) allocator).pinnedDirectMemory());
+        }
+        // -1 when netty does not track direct memory itself, e.g. with -Dio.netty.maxDirectMemory=0
+        result.put("usedDirectMemory", PlatformDependent.usedDirectMemory());
+        result.put("maxDirectMemory", PlatformDependent.maxDirectMemory());
+        result.put("unwritableEvents", UNWRITABLE.sum());
+        return result;
+    }
+}
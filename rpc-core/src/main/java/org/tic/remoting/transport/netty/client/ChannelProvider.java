@@ -2,47 +2,251 @@ package org.tic.remoting.transport.netty.client;
 
 import io.netty.channel.Channel;
 import lombok.extern.slf4j.Slf4j;
+import org.tic.config.ConfigResolver;
+import org.tic.enums.RpcConfigEnum;
+import org.tic.exception.RpcException;
+import org.tic.factory.SingletonFactory;
 
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Pool of up to {@code rpc.client.connections.per.endpoint} connections per server address.
+ * <p>
+ * A request goes to the active connection with the fewest pending requests ({@code leastPending}, default) or to the
+ * next one in turn ({@code roundRobin}), chosen by {@code rpc.client.connection.select}. A connection with
+ * {@code rpc.client.connection.max.pending} requests in flight takes no more until some complete, and if every
+ * connection of an address is full the call fails right away. Connections that are not writable (outbound buffer
+ * above the high water mark) are only picked when no writable one is left. Closed connections leave the pool by themselves.
+ * </p>
+ *
  * @author codesssss
  * @date 18/8/2024 5:58 pm
  */
 @Slf4j
 public class ChannelProvider {
 
-    private final Map<String, Channel> channelMap;
+    private static final String ROUND_ROBIN = "roundRobin";
+
+    private final Map<String, ChannelPool> channelMap;
+    private final UnprocessedRequests unprocessedRequests;
+    private final int poolSize;
+    private final int maxPending;
+    private final boolean roundRobin;
 
     public ChannelProvider() {
         channelMap = new ConcurrentHashMap<>();
+        unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
+        poolSize = Math.max(1, ConfigResolver.getInt(RpcConfigEnum.CLIENT_CONNECTIONS_PER_ENDPOINT.getPropertyValue(), 1));
+        maxPending = ConfigResolver.getInt(RpcConfigEnum.CLIENT_CONNECTION_MAX_PENDING.getPropertyValue(), 0);
+        roundRobin = ROUND_ROBIN.equalsIgnoreCase(ConfigResolver.getString(RpcConfigEnum.CLIENT_CONNECTION_SELECT.getPropertyValue(), "leastPending"));
     }
 
+    /**
+     * @return an active connection to the address, null if there is none
+     * @throws RpcException if every connection to the address has reached the pending request cap
+     */
     public Channel get(InetSocketAddress inetSocketAddress) {
-        String key = inetSocketAddress.toString();
-        // determine if there is a connection for the corresponding address
-        if (channelMap.containsKey(key)) {
-            Channel channel = channelMap.get(key);
-            // if so, determine if the connection is available, and if so, get it directly
-            if (channel != null && channel.isActive()) {
-                return channel;
-            } else {
-                channelMap.remove(key);
-            }
+        ChannelPool pool = channelMap.get(inetSocketAddress.toString());
+        if (pool == null) {
+            return null;
         }
-        return null;
+        return roundRobin ? pool.nextRoundRobin(inetSocketAddress) : pool.leastPending(inetSocketAddress);
     }
 
-    public void set(InetSocketAddress inetSocketAddress, Channel channel) {
-        String key = inetSocketAddress.toString();
-        channelMap.put(key, channel);
+    /**
+     * @return true if the address has at least one active connection
+     */
+    public boolean hasActive(InetSocketAddress inetSocketAddress) {
+        ChannelPool pool = channelMap.get(inetSocketAddress.toString());
+        return pool != null && pool.hasActive();
+    }
+
+    /**
+     * Add a connection to the pool of its address, the connection is closed if the pool is full already
+     *
+     * @return true if the connection was kept, false if it was closed
+     */
+    public boolean set(InetSocketAddress inetSocketAddress, Channel channel) {
+        ChannelPool pool = poolOf(inetSocketAddress);
+        if (!pool.add(channel)) {
+            log.info("Channel pool for [{}] is full, closing extra connection {}", inetSocketAddress, channel);
+            channel.close();
+            return false;
+        }
+        channel.closeFuture().addListener(future -> pool.remove(channel));
+        return true;
+    }
+
+    /**
+     * Reserve the connects needed to fill the pool of an address, each one must be ended with {@link #connectDone}
+     *
+     * @return number of connections to open
+     */
+    public int reserveConnects(InetSocketAddress inetSocketAddress) {
+        return poolOf(inetSocketAddress).reserveConnects();
+    }
+
+    public void connectDone(InetSocketAddress inetSocketAddress) {
+        poolOf(inetSocketAddress).connecting.decrementAndGet();
     }
 
+    /**
+     * Drop one connection of an address
+     */
+    public void remove(InetSocketAddress inetSocketAddress, Channel channel) {
+        ChannelPool pool = channelMap.get(inetSocketAddress.toString());
+        if (pool != null) {
+            pool.remove(channel);
+        }
+    }
+
+    /**
+     * Drop every connection of an address
+     */
     public void remove(InetSocketAddress inetSocketAddress) {
         String key = inetSocketAddress.toString();
         channelMap.remove(key);
         log.info("Channel map size :[{}]", channelMap.size());
     }
-}
\ No newline at end of file
+
+    private ChannelPool poolOf(InetSocketAddress inetSocketAddress) {
+        return channelMap.computeIfAbsent(inetSocketAddress.toString(), key -> new ChannelPool());
+    }
+
+    /**
+     * Connections of one address, copy-on-write so selection takes no lock
+     */
+    private final class ChannelPool {
+        private volatile Channel[] channels = new Channel[0];
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger connecting = new AtomicInteger();
+
+        Channel leastPending(InetSocketAddress inetSocketAddress) {
+            Channel[] snapshot = channels;
+            int n = snapshot.length;
+            if (n == 0) {
+                return null;
+            }
+            // start at a rotating offset so ties do not all land on the first connection
+            int start = n == 1 ? 0 : (next.getAndIncrement() & Integer.MAX_VALUE) % n;
+            Channel best = null;
+            int bestPending = Integer.MAX_VALUE;
+            boolean bestWritable = false;
+            for (int i = 0; i < n; i++) {
+                Channel channel = snapshot[(start + i) % n];
+                if (!channel.isActive()) {
+                    continue;
+                }
+                // a connection above its write buffer high water mark only takes requests if every other one is too
+                boolean writable = channel.isWritable();
+                if (bestWritable && !writable) {
+                    continue;
+                }
+                int pending = unprocessedRequests.getPendingCount(channel);
+                if (pending < bestPending || writable && !bestWritable) {
+                    best = channel;
+                    bestPending = pending;
+                    bestWritable = writable;
+                    if (pending == 0 && writable) {
+                        break;
+                    }
+                }
+            }
+            if (best != null && maxPending > 0 && bestPending >= maxPending) {
+                throw saturated(inetSocketAddress);
+            }
+            return best;
+        }
+
+        Channel nextRoundRobin(InetSocketAddress inetSocketAddress) {
+            Channel[] snapshot = channels;
+            int n = snapshot.length;
+            int start = (next.getAndIncrement() & Integer.MAX_VALUE);
+            Channel unwritable = null;
+            boolean anyActive = false;
+            for (int i = 0; i < n; i++) {
+                Channel channel = snapshot[(start + i) % n];
+                if (!channel.isActive()) {
+                    continue;
+                }
+                anyActive = true;
+                if (maxPending > 0 && unprocessedRequests.getPendingCount(channel) >= maxPending) {
+                    continue;
+                }
+                if (channel.isWritable()) {
+                    return channel;
+                }
+                if (unwritable == null) {
+                    unwritable = channel;
+                }
+            }
+            if (unwritable != null) {
+                return unwritable;
+            }
+            if (anyActive) {
+                throw saturated(inetSocketAddress);
+            }
+            return null;
+        }
+
+        boolean hasActive() {
+            for (Channel channel : channels) {
+                if (channel.isActive()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized boolean add(Channel channel) {
+            Channel[] current = channels;
+            int active = 0;
+            for (Channel c : current) {
+                if (c.isActive()) {
+                    active++;
+                }
+            }
+            if (active >= poolSize) {
+                return false;
+            }
+            Channel[] updated = Arrays.stream(current).filter(Channel::isActive).toArray(Channel[]::new);
+            updated = Arrays.copyOf(updated, updated.length + 1);
+            updated[updated.length - 1] = channel;
+            channels = updated;
+            return true;
+        }
+
+        synchronized void remove(Channel channel) {
+            channels = Arrays.stream(channels).filter(c -> c != channel).toArray(Channel[]::new);
+        }
+
+        int reserveConnects() {
+            if (channels.length + connecting.get() >= poolSize) {
+                // pool is full, the common case on the request path
+                return 0;
+            }
+            synchronized (this) {
+                int active = 0;
+                for (Channel c : channels) {
+                    if (c.isActive()) {
+                        active++;
+                    }
+                }
+                int missing = poolSize - active - connecting.get();
+                if (missing <= 0) {
+                    return 0;
+                }
+                connecting.addAndGet(missing);
+                return missing;
+            }
+        }
+
+        private RpcException saturated(InetSocketAddress inetSocketAddress) {
+            return new RpcException("All connections to [" + inetSocketAddress + "] have " + maxPending + " pending requests");
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.tic.remoting.transport.netty.client;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import lombok.extern.slf4j.Slf4j;
+import org.tic.exception.RpcException;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens client connections without blocking the caller.
+ * <p>
+ * Connect attempts and their exponential backoff run on the event loop, and callers get a future of the channel.
+ * Concurrent connects to the same address share one attempt. Once an address has a connection, the rest of its
+ * {@link ChannelProvider} pool is opened in the background. Addresses reported by service discovery can be
+ * connected ahead of time through {@link #warmUp}, so the first request to a new instance does not wait for the connect.
+ * </p>
+ */
+@Slf4j
+public class ConnectionManager {
+
+    private final Bootstrap bootstrap;
+    private final ChannelProvider channelProvider;
+    private final InstanceHealthTracker healthTracker;
+    private final int retryCount;
+    private final long retryIntervalMs;
+    private final Map<String, CompletableFuture<Channel>> connecting = new ConcurrentHashMap<>();
+
+    public ConnectionManager(Bootstrap bootstrap, ChannelProvider channelProvider, InstanceHealthTracker healthTracker,
+                             int retryCount, long retryIntervalMs) {
+        this.bootstrap = bootstrap;
+        this.channelProvider = channelProvider;
+        this.healthTracker = healthTracker;
+        this.retryCount = Math.max(1, retryCount);
+        this.retryIntervalMs = retryIntervalMs;
+    }
+
+    /**
+     * @return a future of an active pooled channel to the address, already completed if one is connected; failed
+     * with an RpcException if every connection to the address has reached its pending request cap
+     */
+    public CompletableFuture<Channel> acquire(InetSocketAddress inetSocketAddress) {
+        Channel channel;
+        try {
+            channel = channelProvider.get(inetSocketAddress);
+        } catch (RpcException e) {
+            // through the future like a connect failure, so the caller's completion hooks still run
+            return CompletableFuture.failedFuture(e);
+        }
+        if (channel != null) {
+            fillPool(inetSocketAddress);
+            return CompletableFuture.completedFuture(channel);
+        }
+        return connect(inetSocketAddress);
+    }
+
+    /**
+     * Connect to the address with exponential backoff retry, joining the attempt already in progress if there is one
+     */
+    public CompletableFuture<Channel> connect(InetSocketAddress inetSocketAddress) {
+        String key = inetSocketAddress.toString();
+        CompletableFuture<Channel> inProgress = connecting.get(key);
+        if (inProgress != null) {
+            return inProgress;
+        }
+        CompletableFuture<Channel> created = new CompletableFuture<>();
+        inProgress = connecting.putIfAbsent(key, created);
+        if (inProgress != null) {
+            return inProgress;
+        }
+        created.whenComplete((channel, error) -> connecting.remove(key, created));
+        attempt(inetSocketAddress, 1, created);
+        return created;
+    }
+
+    /**
+     * Start connecting to every listed instance ("host:port") that has no connection yet
+     */
+    public void warmUp(List<String> serviceUrls) {
+        for (String serviceUrl : serviceUrls) {
+            int separator = serviceUrl.lastIndexOf(':');
+            if (separator <= 0) {
+                continue;
+            }
+            InetSocketAddress inetSocketAddress;
+            try {
+                inetSocketAddress = new InetSocketAddress(serviceUrl.substring(0, separator), Integer.parseInt(serviceUrl.substring(separator + 1)));
+            } catch (IllegalArgumentException e) {
+                log.warn("Skip warm-up of malformed address [{}]", serviceUrl);
+                continue;
+            }
+            if (!channelProvider.hasActive(inetSocketAddress)) {
+                log.info("Warming up connection to discovered instance [{}]", inetSocketAddress);
+                connect(inetSocketAddress);
+            }
+        }
+    }
+
+    private void attempt(InetSocketAddress inetSocketAddress, int attempt, CompletableFuture<Channel> result) {
+        bootstrap.connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                log.info("The client has connected [{}] successful! (attempt {})", inetSocketAddress, attempt);
+                if (channelProvider.set(inetSocketAddress, future.channel())) {
+                    result.complete(future.channel());
+                    fillPool(inetSocketAddress);
+                } else {
+                    // pool connects got there first and this one was closed, hand out one of theirs
+                    completeFromPool(inetSocketAddress, result);
+                }
+                return;
+            }
+            healthTracker.recordFailure(inetSocketAddress.getHostString() + ":" + inetSocketAddress.getPort());
+            log.warn("Failed to connect to [{}], attempt {}/{}, error: {}",
+                    inetSocketAddress, attempt, retryCount, future.cause().getMessage());
+            if (attempt >= retryCount) {
+                String errorMsg = String.format("Failed to connect to [%s] after %d attempts", inetSocketAddress, retryCount);
+                log.error(errorMsg);
+                result.completeExceptionally(new RpcException(errorMsg, future.cause()));
+                return;
+            }
+            // Exponential backoff: interval * 2^(attempt-1), waited out on the event loop rather than in a sleeping thread
+            long delay = retryIntervalMs * (1L << (attempt - 1));
+            log.info("Retrying connection to [{}] in {}ms...", inetSocketAddress, delay);
+            bootstrap.config().group().schedule(() -> attempt(inetSocketAddress, attempt + 1, result), delay, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private void completeFromPool(InetSocketAddress inetSocketAddress, CompletableFuture<Channel> result) {
+        try {
+            Channel channel = channelProvider.get(inetSocketAddress);
+            if (channel != null) {
+                result.complete(channel);
+            } else {
+                result.completeExceptionally(new RpcException("No active connection to [" + inetSocketAddress + "]"));
+            }
+        } catch (RpcException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Open the connections still missing from the pool of an address without waiting for them
+     */
+    private void fillPool(InetSocketAddress inetSocketAddress) {
+        int missing = channelProvider.reserveConnects(inetSocketAddress);
+        for (int i = 0; i < missing; i++) {
+            bootstrap.connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
+                channelProvider.connectDone(inetSocketAddress);
+                if (future.isSuccess()) {
+                    channelProvider.set(inetSocketAddress, future.channel());
+                } else {
+                    log.warn("Failed to open pooled connection to [{}]: {}", inetSocketAddress, future.cause().getMessage());
+                }
+            });
+        }
+    }
+}
@@ -3,84 +3,242 @@ package org.tic.remoting.transport.netty.client;
 import org.tic.config.ConfigResolver;
 import org.tic.enums.RpcConfigEnum;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Tracks instance health and simple circuit breaker state.
+ * Tracks instance health: a circuit breaker per instance, plus the success rate and latency percentiles of its
+ * responses over a sliding window ({@code rpc.client.health.window.ms}).
+ * <p>
+ * A closed instance gets a continuous health weight from its success rate, and its median latency is published so
+ * routing can weight instances by how they compare to the fastest one: a slow but working instance gets less
+ * traffic long before it trips the breaker. Both are recomputed by the recording thread once per window bucket and
+ * kept coarse, so routing is not rebuilt on every sample.
+ * </p>
+ * Every change of state, weight or latency bumps the version of the instance, {@link #version(String)}, and the
+ * counter of all instances, {@link #version()}, so routing built from the health of instances knows when to rebuild.
  */
 public class InstanceHealthTracker {
 
+    private static final int WINDOW_BUCKETS = 10;
+    private static final int HALF_OPEN_WEIGHT = 20;
+    private static final int MIN_WEIGHT = 5;
+
     private enum State {CLOSED, OPEN, HALF_OPEN}
 
-    private static class Stat {
-        volatile State state = State.CLOSED;
+    private final class Stat {
+        final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        final AtomicBoolean trialInProgress = new AtomicBoolean();
+        final SlidingWindowStats window = new SlidingWindowStats(WINDOW_BUCKETS, windowNanos);
         volatile long lastFailureTime = 0;
-        volatile int failureCount = 0;
-        volatile boolean trialInProgress = false;
+        /**
+         * weight from the success rate of the window, 100 while there are too few samples
+         */
+        volatile int qualityWeight = 100;
+        /**
+         * median latency of the window in microseconds, 0 while there are too few samples
+         */
+        volatile long latencyMicros = 0;
+        final AtomicLong version = new AtomicLong();
     }
 
     private final Map<String, Stat> stats = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
     private final int failureThreshold = ConfigResolver.getInt(RpcConfigEnum.CLIENT_CB_FAILURE_THRESHOLD.getPropertyValue(), 5);
     private final long openDurationMs = ConfigResolver.getLong(RpcConfigEnum.CLIENT_CB_OPEN_MS.getPropertyValue(), 5000);
     private final int halfOpenMax = ConfigResolver.getInt(RpcConfigEnum.CLIENT_CB_HALF_OPEN_MAX.getPropertyValue(), 1);
+    private final long windowNanos = TimeUnit.MILLISECONDS.toNanos(
+            ConfigResolver.getLong(RpcConfigEnum.CLIENT_HEALTH_WINDOW_MS.getPropertyValue(), 10000));
+    private final int minSamples = ConfigResolver.getInt(RpcConfigEnum.CLIENT_HEALTH_MIN_SAMPLES.getPropertyValue(), 20);
 
-    public void recordSuccess(String address) {
-        Stat stat = stats.computeIfAbsent(address, k -> new Stat());
-        stat.failureCount = 0;
-        stat.lastFailureTime = 0;
-        stat.trialInProgress = false;
-        stat.state = State.CLOSED;
+    /**
+     * Record a response from the instance, this closes its circuit
+     *
+     * @param latencyNanos time from sending the request to the response
+     */
+    public void recordSuccess(String address, long latencyNanos) {
+        Stat stat = stat(address);
+        // read before write, the common case of a healthy instance then writes nothing shared
+        if (stat.consecutiveFailures.get() != 0) {
+            stat.consecutiveFailures.set(0);
+        }
+        if (stat.state.get() != State.CLOSED && stat.state.getAndSet(State.CLOSED) != State.CLOSED) {
+            stat.trialInProgress.set(false);
+            stat.lastFailureTime = 0;
+            changed(stat);
+        }
+        long now = System.nanoTime();
+        if (stat.window.record(now, latencyNanos, true)) {
+            refresh(stat, now);
+        }
     }
 
     public void recordFailure(String address) {
-        Stat stat = stats.computeIfAbsent(address, k -> new Stat());
-        stat.failureCount++;
+        Stat stat = stat(address);
+        int failures = stat.consecutiveFailures.incrementAndGet();
         stat.lastFailureTime = System.currentTimeMillis();
-        if (stat.state == State.HALF_OPEN) {
+        if (stat.state.compareAndSet(State.HALF_OPEN, State.OPEN)) {
             // Fail-fast: go back to OPEN and allow future half-open attempts after cool-down
-            stat.state = State.OPEN;
-            stat.trialInProgress = false;
-        } else if (stat.failureCount >= failureThreshold) {
-            stat.state = State.OPEN;
-            stat.trialInProgress = false;
+            stat.trialInProgress.set(false);
+            changed(stat);
+        } else if (failures >= failureThreshold && stat.state.compareAndSet(State.CLOSED, State.OPEN)) {
+            stat.trialInProgress.set(false);
+            changed(stat);
+        }
+        long now = System.nanoTime();
+        if (stat.window.record(now, 0, false)) {
+            refresh(stat, now);
         }
     }
 
-    public List<String> filterCandidates(List<String> addresses) {
-        List<String> result = new ArrayList<>();
-        long now = System.currentTimeMillis();
-        for (String addr : addresses) {
-            Stat stat = stats.get(addr);
-            if (stat == null || stat.state == State.CLOSED) {
-                result.add(addr);
-                continue;
-            }
-            if (stat.state == State.OPEN && now - stat.lastFailureTime >= openDurationMs) {
-                stat.state = State.HALF_OPEN;
-                stat.trialInProgress = false;
-            }
-            if (stat.state == State.HALF_OPEN) {
-                if (!stat.trialInProgress && halfOpenMax > 0) {
-                    stat.trialInProgress = true;
-                    result.add(addr);
-                }
-            }
+    /**
+     * Record a request the instance turned away because it is overloaded. This lowers its weight through the success
+     * rate but is no breaker failure: shedding load must not turn into taking the instance out of routing.
+     */
+    public void recordRejection(String address) {
+        Stat stat = stat(address);
+        if (stat.state.get() == State.HALF_OPEN && stat.trialInProgress.compareAndSet(true, false)) {
+            // the trial call proved nothing either way, let another one through
+            changed(stat);
         }
-        return result.isEmpty() ? addresses : result;
+        long now = System.nanoTime();
+        if (stat.window.record(now, 0, false)) {
+            refresh(stat, now);
+        }
+    }
+
+    /**
+     * @return a counter that changes whenever the health of any instance changes
+     */
+    public long version() {
+        return version.get();
     }
 
+    /**
+     * @return a counter that changes whenever the health of the instance changes
+     */
+    public long version(String address) {
+        Stat stat = stats.get(address);
+        return stat == null ? 0 : stat.version.get();
+    }
+
+    /**
+     * Routing weight of the instance in percent. A closed instance gets its success rate squared, at least 5:
+     * 90% success gives 81. A half-open instance still free for its trial call gets 20, one that must not be called 0.
+     * An open instance whose cool-down is over turns half-open here.
+     */
     public int healthWeight(String address) {
         Stat stat = stats.get(address);
-        if (stat == null || stat.state == State.CLOSED) {
+        if (stat == null) {
             return 100;
         }
-        if (stat.state == State.OPEN) {
-            return 0;
+        State state = stat.state.get();
+        if (state == State.CLOSED) {
+            return stat.qualityWeight;
+        }
+        if (state == State.OPEN && System.currentTimeMillis() - stat.lastFailureTime >= openDurationMs
+                && stat.state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            stat.trialInProgress.set(false);
+            changed(stat);
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN && !stat.trialInProgress.get() && halfOpenMax > 0) {
+            return HALF_OPEN_WEIGHT;
+        }
+        return 0;
+    }
+
+    /**
+     * @return median response time of the instance over the window in microseconds, 0 if not known
+     */
+    public long latencyMicros(String address) {
+        Stat stat = stats.get(address);
+        return stat == null ? 0 : stat.latencyMicros;
+    }
+
+    public boolean isHalfOpen(String address) {
+        Stat stat = stats.get(address);
+        return stat != null && stat.state.get() == State.HALF_OPEN;
+    }
+
+    /**
+     * @return when an open instance may take a trial call again, Long.MAX_VALUE if it is not open
+     */
+    public long reopenAtMs(String address) {
+        Stat stat = stats.get(address);
+        if (stat == null || stat.state.get() != State.OPEN) {
+            return Long.MAX_VALUE;
+        }
+        return stat.lastFailureTime + openDurationMs;
+    }
+
+    /**
+     * Record that a call was routed to the instance; a half-open instance takes no further calls until its trial
+     * call succeeds or fails
+     */
+    public void onRouted(String address) {
+        Stat stat = stats.get(address);
+        if (stat != null && stat.state.get() == State.HALF_OPEN && stat.trialInProgress.compareAndSet(false, true)) {
+            changed(stat);
+        }
+    }
+
+    /**
+     * Health of every instance seen, keyed by "host:port"
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new HashMap<>();
+        long now = System.nanoTime();
+        stats.forEach((address, stat) -> {
+            SlidingWindowStats.Snapshot window = stat.window.snapshot(now);
+            Map<String, Object> instance = new HashMap<>();
+            instance.put("state", stat.state.get().name());
+            instance.put("healthWeight", healthWeight(address));
+            instance.put("successes", window.successes);
+            instance.put("failures", window.failures);
+            instance.put("p50Micros", window.p50Micros);
+            instance.put("p90Micros", window.p90Micros);
+            instance.put("p99Micros", window.p99Micros);
+            result.put(address, instance);
+        });
+        return result;
+    }
+
+    private void changed(Stat stat) {
+        stat.version.incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    private Stat stat(String address) {
+        Stat stat = stats.get(address);
+        return stat != null ? stat : stats.computeIfAbsent(address, k -> new Stat());
+    }
+
+    /**
+     * Recompute the weight and latency of the instance from its window, called once per window bucket
+     */
+    private void refresh(Stat stat, long now) {
+        SlidingWindowStats.Snapshot window = stat.window.snapshot(now);
+        int qualityWeight = 100;
+        long latencyMicros = 0;
+        if (window.total() >= minSamples) {
+            double successRate = (double) window.successes / window.total();
+            // steps of 5 keep routing from being rebuilt for noise
+            qualityWeight = Math.max(MIN_WEIGHT, (int) Math.round(successRate * successRate * 20) * 5);
+            // already coarse, histogram buckets are a quarter of a power of two wide
+            latencyMicros = window.p50Micros;
+        }
+        if (qualityWeight != stat.qualityWeight || latencyMicros != stat.latencyMicros) {
+            stat.qualityWeight = qualityWeight;
+            stat.latencyMicros = latencyMicros;
+            changed(stat);
         }
-        // HALF_OPEN: degrade weight
-        return 20;
     }
 }
@@ -0,0 +1,123 @@
+package org.tic.remoting.transport.netty.client;
+
+import org.tic.config.ConfigResolver;
+import org.tic.enums.RpcConfigEnum;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Live load of every instance as this client sees it: requests in flight and a peak-sensitive moving average of
+ * response latency. Fed by {@link NettyRpcClient} around every request, read by the load aware load balancers.
+ * <p>
+ * Reading a load writes nothing: the latency average is kept as an immutable sample swapped in by compare-and-set
+ * when a response arrives, and its decay since then is applied on read.
+ * </p>
+ */
+public class InstanceLoadTracker {
+
+    /**
+     * cost of an instance that has requests in flight but never answered one yet
+     */
+    private static final double PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, InstanceLoad> loads = new ConcurrentHashMap<>();
+    private final double decayNanos = TimeUnit.MILLISECONDS.toNanos(
+            ConfigResolver.getLong(RpcConfigEnum.LOAD_BALANCE_EWMA_DECAY_MS.getPropertyValue(), 10000));
+
+    /**
+     * Record a request sent to the instance
+     *
+     * @param address instance, "host:port"
+     * @return the load to call {@link InstanceLoad#finish} on once the request completes
+     */
+    public InstanceLoad start(String address) {
+        InstanceLoad load = loads.get(address);
+        if (load == null) {
+            load = loads.computeIfAbsent(address, k -> new InstanceLoad());
+        }
+        load.active.incrementAndGet();
+        return load;
+    }
+
+    /**
+     * @return requests in flight to the instance
+     */
+    public int active(String address) {
+        InstanceLoad load = loads.get(address);
+        return load == null ? 0 : load.active.get();
+    }
+
+    /**
+     * Peak EWMA load: the latency average, which jumps to any higher sample right away and decays slowly,
+     * times the requests in flight plus one. An instance never called has load 0 so it gets probed.
+     */
+    public double peakEwmaLoad(String address) {
+        InstanceLoad load = loads.get(address);
+        return load == null ? 0 : load.peakEwmaLoad(System.nanoTime());
+    }
+
+    public final class InstanceLoad {
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicReference<Cost> cost = new AtomicReference<>(new Cost(0, System.nanoTime()));
+
+        private InstanceLoad() {
+        }
+
+        /**
+         * @param elapsedNanos time from send to response
+         * @param success      false if the request failed, its latency is not a response time and is not recorded
+         */
+        public void finish(long elapsedNanos, boolean success) {
+            active.decrementAndGet();
+            if (success) {
+                observe(elapsedNanos, System.nanoTime());
+            }
+        }
+
+        private void observe(double rttNanos, long now) {
+            Cost current;
+            Cost updated;
+            do {
+                current = cost.get();
+                double weight = current.weight(now);
+                double costNanos = rttNanos > current.costNanos ? rttNanos : current.costNanos * weight + rttNanos * (1 - weight);
+                updated = new Cost(costNanos, Math.max(now, current.stampNanos));
+            } while (!cost.compareAndSet(current, updated));
+        }
+
+        private double peakEwmaLoad(long now) {
+            Cost current = cost.get();
+            // decay towards zero while no responses come in, an idle instance slowly becomes attractive again
+            double costNanos = current.costNanos * current.weight(now);
+            int inflight = active.get();
+            if (current.costNanos == 0 && inflight != 0) {
+                return PENALTY_NANOS + inflight;
+            }
+            return costNanos * (inflight + 1);
+        }
+    }
+
+    /**
+     * Latency average and when it was last updated
+     */
+    private final class Cost {
+        private final double costNanos;
+        private final long stampNanos;
+
+        private Cost(double costNanos, long stampNanos) {
+            this.costNanos = costNanos;
+            this.stampNanos = stampNanos;
+        }
+
+        /**
+         * @return how much of the average is left at {@code now}
+         */
+        private double weight(long now) {
+            return Math.exp(-Math.max(now - stampNanos, 0) / decayNanos);
+        }
+    }
+}
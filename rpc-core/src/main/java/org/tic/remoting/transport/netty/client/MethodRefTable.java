@@ -0,0 +1,60 @@
+package org.tic.remoting.transport.netty.client;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import org.tic.remoting.dto.MethodKey;
+import org.tic.remoting.dto.RpcRequest;
+import org.tic.remoting.dto.RpcResponse;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client side view of the server's method table, kept per connection because the ids are only
+ * meaningful to the server that assigned them. A new connection starts empty and learns the ids again.
+ */
+public final class MethodRefTable {
+
+    private static final AttributeKey<MethodRefTable> KEY = AttributeKey.valueOf("rpcMethodRefTable");
+
+    private final Map<MethodKey, int[]> refs = new ConcurrentHashMap<>();
+
+    private MethodRefTable() {
+    }
+
+    public static MethodRefTable of(Channel channel) {
+        MethodRefTable table = channel.attr(KEY).get();
+        if (table == null) {
+            MethodRefTable created = new MethodRefTable();
+            table = channel.attr(KEY).setIfAbsent(created);
+            if (table == null) {
+                table = created;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return a request referencing the method by id, or {@code rpcRequest} itself if no id is known yet
+     */
+    public RpcRequest compact(RpcRequest rpcRequest) {
+        int[] ref = refs.get(MethodKey.of(rpcRequest));
+        if (ref == null) {
+            return rpcRequest;
+        }
+        return RpcRequest.builder()
+                .parameters(rpcRequest.getParameters())
+                .serviceId(ref[0])
+                .methodId(ref[1])
+                .build();
+    }
+
+    /**
+     * Remember the ids the server assigned in response to a request sent by name
+     */
+    public void learn(RpcRequest rpcRequest, RpcResponse<?> rpcResponse) {
+        if (rpcResponse != null && rpcResponse.getServiceId() > 0) {
+            refs.putIfAbsent(MethodKey.of(rpcRequest), new int[]{rpcResponse.getServiceId(), rpcResponse.getMethodId()});
+        }
+    }
+}
@@ -2,16 +2,16 @@ package org.tic.remoting.transport.netty.client;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.timeout.IdleStateHandler;
 import lombok.extern.slf4j.Slf4j;
 import org.tic.config.ConfigResolver;
+import org.tic.config.RpcServiceConfig;
 import org.tic.enums.CompressTypeEnum;
 import org.tic.enums.RpcConfigEnum;
+import org.tic.enums.RpcResponseCodeEnum;
 import org.tic.enums.SerializationTypeEnum;
 import org.tic.enums.ServiceDiscoveryEnum;
 import org.tic.exception.RpcException;
@@ -23,13 +23,15 @@ import org.tic.remoting.dto.RpcMessage;
 import org.tic.remoting.dto.RpcRequest;
 import org.tic.remoting.dto.RpcResponse;
 import org.tic.remoting.transport.RpcRequestTransport;
+import org.tic.remoting.transport.netty.FlushBatcher;
+import org.tic.remoting.transport.netty.NettyTransport;
+import org.tic.remoting.transport.netty.TransportMetrics;
 import org.tic.remoting.transport.netty.codec.RpcMessageDecoder;
 import org.tic.remoting.transport.netty.codec.RpcMessageEncoder;
-import org.tic.remoting.transport.netty.client.InstanceHealthTracker;
+import org.tic.utils.StringUtil;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -63,19 +65,26 @@ public final class NettyRpcClient implements RpcRequestTransport {
     private final Bootstrap bootstrap;
     private final EventLoopGroup eventLoopGroup;
     private final InstanceHealthTracker healthTracker;
+    private final InstanceLoadTracker loadTracker;
+    private final ConnectionManager connectionManager;
     private final int retryCount;
     private final long retryIntervalMs;
+    private final byte defaultCodec;
+    private final byte defaultCompress;
 
     public NettyRpcClient() {
         // Load configuration
         this.retryCount = loadRetryCount();
         this.retryIntervalMs = loadRetryInterval();
+        this.defaultCodec = resolveCodec(ConfigResolver.getString(RpcConfigEnum.SERIALIZATION.getPropertyValue(), SerializationTypeEnum.KRYO.getName()));
+        this.defaultCompress = resolveCompress(ConfigResolver.getString(RpcConfigEnum.COMPRESS.getPropertyValue(), CompressTypeEnum.GZIP.getName()));
         
         // initialize resources such as EventLoopGroup, Bootstrap
-        eventLoopGroup = new NioEventLoopGroup();
+        eventLoopGroup = NettyTransport.newEventLoopGroup(0);
         bootstrap = new Bootstrap();
+        NettyTransport.configureClient(bootstrap);
+        TransportMetrics.startLogging();
         bootstrap.group(eventLoopGroup)
-                .channel(NioSocketChannel.class)
                 .handler(new LoggingHandler(LogLevel.INFO))
                 //  The timeout period of the connection.
                 //  If this time is exceeded or the connection cannot be established, the connection fails.
@@ -95,6 +104,12 @@ public final class NettyRpcClient implements RpcRequestTransport {
         this.unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
         this.channelProvider = SingletonFactory.getInstance(ChannelProvider.class);
         this.healthTracker = SingletonFactory.getInstance(InstanceHealthTracker.class);
+        this.loadTracker = SingletonFactory.getInstance(InstanceLoadTracker.class);
+        this.connectionManager = new ConnectionManager(bootstrap, channelProvider, healthTracker, retryCount, retryIntervalMs);
+        if (ConfigResolver.getBoolean(RpcConfigEnum.CLIENT_WARMUP_ENABLED.getPropertyValue(), true)) {
+            // connect to instances as soon as discovery reports them, not on the first request
+            serviceDiscovery.addInstanceListener((rpcServiceName, serviceUrls) -> connectionManager.warmUp(serviceUrls));
+        }
     }
     
     /**
@@ -111,125 +126,109 @@ public final class NettyRpcClient implements RpcRequestTransport {
         return ConfigResolver.getLong(RpcConfigEnum.RPC_CONNECT_RETRY_INTERVAL_MS.getPropertyValue(), DEFAULT_RETRY_INTERVAL_MS);
     }
 
-    /**
-     * Connect to server with exponential backoff retry.
-     *
-     * @param inetSocketAddress server address
-     * @return the channel
-     * @throws RpcException if all retry attempts fail
-     */
-    public Channel doConnect(InetSocketAddress inetSocketAddress) {
-        Exception lastException = null;
-        
-        for (int attempt = 1; attempt <= retryCount; attempt++) {
-            final int currentAttempt = attempt;
-            try {
-                CompletableFuture<Channel> completableFuture = new CompletableFuture<>();
-                
-                bootstrap.connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
-                    if (future.isSuccess()) {
-                        log.info("The client has connected [{}] successful! (attempt {})", inetSocketAddress, currentAttempt);
-                        completableFuture.complete(future.channel());
-                    } else {
-                        completableFuture.completeExceptionally(future.cause());
-                    }
-                });
-                
-                // Wait for connection with timeout
-                Channel channel = completableFuture.get(CONNECT_TIMEOUT_MS + 1000, TimeUnit.MILLISECONDS);
-                return channel;
-                
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RpcException("Connection interrupted to " + inetSocketAddress, e);
-            } catch (ExecutionException | TimeoutException e) {
-                lastException = e;
-                healthTracker.recordFailure(formatAddress(inetSocketAddress));
-                log.warn("Failed to connect to [{}], attempt {}/{}, error: {}", 
-                        inetSocketAddress, attempt, retryCount, e.getMessage());
-                
-                if (attempt < retryCount) {
-                    // Exponential backoff: interval * 2^(attempt-1)
-                    long sleepTime = retryIntervalMs * (1L << (attempt - 1));
-                    log.info("Retrying connection to [{}] in {}ms...", inetSocketAddress, sleepTime);
-                    try {
-                        Thread.sleep(sleepTime);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RpcException("Connection retry interrupted to " + inetSocketAddress, ie);
-                    }
-                }
-            }
-        }
-        
-        // All retries failed
-        String errorMsg = String.format("Failed to connect to [%s] after %d attempts", inetSocketAddress, retryCount);
-        log.error(errorMsg);
-        throw new RpcException(errorMsg, lastException);
+    @Override
+    public Object sendRpcRequest(RpcRequest rpcRequest) {
+        return sendRpcRequest(rpcRequest, defaultCodec);
     }
 
     @Override
-    public Object sendRpcRequest(RpcRequest rpcRequest) {
+    public Object sendRpcRequest(RpcRequest rpcRequest, RpcServiceConfig rpcServiceConfig) {
+        String serialization = rpcServiceConfig == null ? null : rpcServiceConfig.getSerialization();
+        return sendRpcRequest(rpcRequest, StringUtil.isBlank(serialization) ? defaultCodec : resolveCodec(serialization));
+    }
+
+    private Object sendRpcRequest(RpcRequest rpcRequest, byte codec) {
         // build return value
         CompletableFuture<RpcResponse<Object>> resultFuture = new CompletableFuture<>();
         // get server address
         InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcRequest);
-        // get server address related channel (with health check)
-        Channel channel = getChannel(inetSocketAddress);
-        if (channel.isActive()) {
-            // put unprocessed request
-            unprocessedRequests.put(rpcRequest.getRequestId(), resultFuture);
-            RpcMessage rpcMessage = RpcMessage.builder().data(rpcRequest)
-                    .codec(SerializationTypeEnum.KRYO.getCode())
-                    .compress(CompressTypeEnum.GZIP.getCode())
-                    .messageType(RpcConstants.REQUEST_TYPE).build();
-            channel.writeAndFlush(rpcMessage).addListener((ChannelFutureListener) future -> {
-                if (future.isSuccess()) {
-                    log.info("client send message: [{}]", rpcMessage);
-                    healthTracker.recordSuccess(formatAddress(inetSocketAddress));
-                } else {
-                    future.channel().close();
-                    // Remove from unprocessed requests
-                    unprocessedRequests.remove(rpcRequest.getRequestId());
-                    healthTracker.recordFailure(formatAddress(inetSocketAddress));
-                    resultFuture.completeExceptionally(future.cause());log.error("Send failed:", future.cause());
-                }
-            });
-        } else {
-            // Channel is not active, remove it and throw exception
-            channelProvider.remove(inetSocketAddress);
-            healthTracker.recordFailure(formatAddress(inetSocketAddress));
-            throw new RpcException("Channel is not active for address: " + inetSocketAddress);
-        } // 1. 这里添加括号，关闭 else 块
-
-        return resultFuture; // 2. 这个 return 现在位于 else 之外
-    } // 3. 这里添加括号，关闭 sendRpcRequest 方法
+        // in flight from here to the response, for the load aware load balancers
+        String address = formatAddress(inetSocketAddress);
+        InstanceLoadTracker.InstanceLoad load = loadTracker.start(address);
+        long start = System.nanoTime();
+        resultFuture.whenComplete((rpcResponse, error) -> onComplete(address, load, System.nanoTime() - start, rpcResponse, error));
+        // write once a pooled channel is available, right away if the address is connected already
+        connectionManager.acquire(inetSocketAddress).whenComplete((channel, error) -> {
+            if (error != null) {
+                resultFuture.completeExceptionally(error);
+            } else {
+                write(channel, inetSocketAddress, rpcRequest, codec, resultFuture);
+            }
+        });
+        return resultFuture;
+    }
 
     /**
-     * Get channel for the given address with health check.
-     * If the cached channel is inactive, it will be removed and a new connection will be established.
-     *
-     * @param inetSocketAddress server address
-     * @return active channel
+     * Feed the outcome of a request to the load and health trackers.
+     * Connect and send failures are recorded where they happen, here only timeouts count as failures.
      */
-    public Channel getChannel(InetSocketAddress inetSocketAddress) {
-        Channel channel = channelProvider.get(inetSocketAddress);
-        
-        // Check if channel exists and is active
-        if (channel != null) {
-            if (channel.isActive()) {
-                return channel;
+    private void onComplete(String address, InstanceLoadTracker.InstanceLoad load, long elapsedNanos,
+                            RpcResponse<Object> rpcResponse, Throwable error) {
+        // an overload rejection returns fast, it must not make the instance look fast
+        boolean overloaded = error == null && rpcResponse.getCode() != null
+                && rpcResponse.getCode() == RpcResponseCodeEnum.TOO_MANY_REQUESTS.getCode();
+        boolean responded = error == null && !overloaded;
+        load.finish(elapsedNanos, responded);
+        if (responded) {
+            healthTracker.recordSuccess(address, elapsedNanos);
+        } else if (overloaded) {
+            healthTracker.recordRejection(address);
+        } else if (error instanceof TimeoutException) {
+            healthTracker.recordFailure(address);
+        }
+    }
+
+    private void write(Channel channel, InetSocketAddress inetSocketAddress, RpcRequest rpcRequest, byte codec,
+                       CompletableFuture<RpcResponse<Object>> resultFuture) {
+        if (!channel.isActive()) {
+            // Channel is not active, remove it and fail the request
+            channelProvider.remove(inetSocketAddress, channel);
+            healthTracker.recordFailure(formatAddress(inetSocketAddress));
+            resultFuture.completeExceptionally(new RpcException("Channel is not active for address: " + inetSocketAddress));
+            return;
+        }
+        // put unprocessed request
+        int requestId = unprocessedRequests.put(channel, resultFuture);
+        // reference the method by its negotiated ids once this connection has learned them
+        MethodRefTable methodRefs = MethodRefTable.of(channel);
+        RpcRequest wireRequest = methodRefs.compact(rpcRequest);
+        if (wireRequest == rpcRequest) {
+            resultFuture.thenAccept(rpcResponse -> methodRefs.learn(rpcRequest, rpcResponse));
+        }
+        RpcMessage rpcMessage = RpcMessage.builder().data(wireRequest)
+                .requestId(requestId)
+                .codec(codec)
+                .compress(defaultCompress)
+                .messageType(RpcConstants.REQUEST_TYPE).build();
+        // coalesced with the other requests written to this channel in the same event loop tick
+        FlushBatcher.of(channel).write(rpcMessage).addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                log.info("client send message: [{}]", rpcMessage);
             } else {
-                // Channel is inactive, remove it from cache
-                log.warn("Cached channel for [{}] is inactive, removing and reconnecting...", inetSocketAddress);
-                channelProvider.remove(inetSocketAddress);
+                future.channel().close();
+                // Remove from unprocessed requests
+                unprocessedRequests.remove(future.channel(), requestId);
+                healthTracker.recordFailure(formatAddress(inetSocketAddress));
+                resultFuture.completeExceptionally(future.cause());
+                log.error("Send failed:", future.cause());
             }
+        });
+    }
+
+    private byte resolveCodec(String serialization) {
+        SerializationTypeEnum serializationType = SerializationTypeEnum.getByName(serialization);
+        if (serializationType == null) {
+            throw new RpcException("Unknown serialization: " + serialization);
         }
-        
-        // Create new connection
-        channel = doConnect(inetSocketAddress);
-        channelProvider.set(inetSocketAddress, channel);
-        return channel;
+        return serializationType.getCode();
+    }
+
+    private byte resolveCompress(String compress) {
+        CompressTypeEnum compressType = CompressTypeEnum.getByName(compress);
+        if (compressType == null) {
+            throw new RpcException("Unknown compress: " + compress);
+        }
+        return compressType.getCode();
     }
 
     String formatAddress(InetSocketAddress address) {
@@ -10,10 +10,12 @@ import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.tic.enums.CompressTypeEnum;
 import org.tic.enums.SerializationTypeEnum;
+import org.tic.exception.RpcException;
 import org.tic.factory.SingletonFactory;
 import org.tic.remoting.constants.RpcConstants;
 import org.tic.remoting.dto.RpcMessage;
 import org.tic.remoting.dto.RpcResponse;
+import org.tic.remoting.transport.netty.TransportMetrics;
 
 import java.net.InetSocketAddress;
 
@@ -56,10 +58,8 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
                     log.info("Heartbeat response received: [{}]", tmp.getData());
                 } else if (messageType == RpcConstants.RESPONSE_TYPE) {
                     RpcResponse<Object> rpcResponse = (RpcResponse<Object>) tmp.getData();
-                    unprocessedRequests.complete(rpcResponse);
-                    if (ctx.channel().remoteAddress() instanceof InetSocketAddress) {
-                        healthTracker.recordSuccess(nettyRpcClient.formatAddress((InetSocketAddress) ctx.channel().remoteAddress()));
-                    }
+                    // the sender records the response with its latency in the health tracker
+                    unprocessedRequests.complete(ctx.channel(), tmp.getRequestId(), rpcResponse);
                 }
             }
         } finally {
@@ -81,10 +81,11 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
             IdleState state = ((IdleStateEvent) evt).state();
             if (state == IdleState.WRITER_IDLE) {
                 log.info("Write idle detected for [{}]", ctx.channel().remoteAddress());
-                Channel channel = nettyRpcClient.getChannel((InetSocketAddress) ctx.channel().remoteAddress());
+                // every pooled connection keeps itself alive
+                Channel channel = ctx.channel();
                 RpcMessage rpcMessage = new RpcMessage();
                 rpcMessage.setCodec(SerializationTypeEnum.KRYO.getCode());
-                rpcMessage.setCompress(CompressTypeEnum.GZIP.getCode());
+                rpcMessage.setCompress(CompressTypeEnum.NONE.getCode());
                 rpcMessage.setMessageType(RpcConstants.HEARTBEAT_REQUEST_TYPE);
                 rpcMessage.setData(RpcConstants.PING);
                 // Send the heartbeat request and close the channel if the write fails
@@ -95,6 +96,22 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable()) {
+            // the pool steers new requests to other connections until this one drains below the low water mark
+            log.warn("Channel [{}] is not writable, outbound buffer above the high water mark", ctx.channel());
+            TransportMetrics.recordUnwritable();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        unprocessedRequests.failAll(ctx.channel(), new RpcException("Connection closed: " + ctx.channel().remoteAddress()));
+        super.channelInactive(ctx);
+    }
+
     /**
      * Called when an exception occurs during the processing of a client message.
      *
@@ -0,0 +1,163 @@
+package org.tic.remoting.transport.netty.client;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Successes, failures and a latency histogram of one instance over a sliding window, kept in a ring of buckets
+ * that are reset as time moves on.
+ * <p>
+ * Every counter is a {@link LongAdder}, so threads recording at the same time do not contend. The histogram has
+ * four sub-buckets per power of two of microseconds, percentiles read from it are within 25% of the real value.
+ * A reset racing with a record can lose that one sample, which does not matter for statistics.
+ * </p>
+ */
+final class SlidingWindowStats {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * up to 2^27 microseconds (about 134s), slower samples land in the last bucket
+     */
+    private static final int LATENCY_BUCKETS = 26 << SUB_BUCKET_BITS;
+
+    private final Bucket[] buckets;
+    private final long bucketNanos;
+
+    /**
+     * @param bucketCount number of buckets the window is split into
+     * @param windowNanos length of the window
+     */
+    SlidingWindowStats(int bucketCount, long windowNanos) {
+        this.buckets = new Bucket[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.bucketNanos = Math.max(1, windowNanos / bucketCount);
+    }
+
+    /**
+     * @param latencyNanos response time, ignored for a failure
+     * @return true if this sample opened a new bucket, i.e. the window moved on since the last one
+     */
+    boolean record(long nowNanos, long latencyNanos, boolean success) {
+        long epoch = Math.floorDiv(nowNanos, bucketNanos);
+        Bucket bucket = buckets[(int) Math.floorMod(epoch, (long) buckets.length)];
+        boolean rotated = false;
+        if (bucket.epoch != epoch) {
+            synchronized (bucket) {
+                if (bucket.epoch != epoch) {
+                    bucket.reset(epoch);
+                    rotated = true;
+                }
+            }
+        }
+        if (success) {
+            bucket.successes.increment();
+            bucket.latencies[indexOf(latencyNanos / 1000)].increment();
+        } else {
+            bucket.failures.increment();
+        }
+        return rotated;
+    }
+
+    Snapshot snapshot(long nowNanos) {
+        long epoch = Math.floorDiv(nowNanos, bucketNanos);
+        long successes = 0;
+        long failures = 0;
+        long[] histogram = new long[LATENCY_BUCKETS];
+        for (Bucket bucket : buckets) {
+            long bucketEpoch = bucket.epoch;
+            if (bucketEpoch == Long.MIN_VALUE || epoch - bucketEpoch >= buckets.length) {
+                // never used, or left the window and not reset yet because nothing was recorded into it since
+                continue;
+            }
+            successes += bucket.successes.sum();
+            failures += bucket.failures.sum();
+            for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                histogram[i] += bucket.latencies[i].sum();
+            }
+        }
+        return new Snapshot(successes, failures, percentile(histogram, 0.5), percentile(histogram, 0.9), percentile(histogram, 0.99));
+    }
+
+    private static long percentile(long[] histogram, double quantile) {
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(histogram.length - 1);
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int log = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (log - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(((log - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub, LATENCY_BUCKETS - 1);
+    }
+
+    /**
+     * @return the smallest value, in microseconds, that falls into the histogram bucket
+     */
+    static long valueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int log = (index >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        return (1L << log) + ((long) (index & (SUB_BUCKETS - 1)) << (log - SUB_BUCKET_BITS));
+    }
+
+    private static final class Bucket {
+        private volatile long epoch = Long.MIN_VALUE;
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder[] latencies = new LongAdder[LATENCY_BUCKETS];
+
+        private Bucket() {
+            for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                latencies[i] = new LongAdder();
+            }
+        }
+
+        private void reset(long newEpoch) {
+            successes.reset();
+            failures.reset();
+            for (LongAdder latency : latencies) {
+                latency.reset();
+            }
+            epoch = newEpoch;
+        }
+    }
+
+    static final class Snapshot {
+        final long successes;
+        final long failures;
+        final long p50Micros;
+        final long p90Micros;
+        final long p99Micros;
+
+        private Snapshot(long successes, long failures, long p50Micros, long p90Micros, long p99Micros) {
+            this.successes = successes;
+            this.failures = failures;
+            this.p50Micros = p50Micros;
+            this.p90Micros = p90Micros;
+            this.p99Micros = p99Micros;
+        }
+
+        long total() {
+            return successes + failures;
+        }
+    }
+}
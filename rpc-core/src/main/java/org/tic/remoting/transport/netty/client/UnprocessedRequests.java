@@ -1,19 +1,35 @@
 package org.tic.remoting.transport.netty.client;
 
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
+import org.tic.config.ConfigResolver;
+import org.tic.enums.RpcConfigEnum;
+import org.tic.exception.RpcException;
 import org.tic.remoting.dto.RpcResponse;
 
-import java.util.Iterator;
-import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Store unprocessed RPC requests with automatic timeout cleanup.
- * 
+ * Store unprocessed RPC requests, each one failing at its own deadline.
+ * <p>
+ * Requests are correlated by the int requestId of the protocol header. Ids come from a per-connection
+ * sequence and the pending futures live in a primitive keyed map attached to the channel, so the table is
+ * sharded by connection and neither side generates or hashes id strings. Every request gets a timeout on a
+ * shared {@link HashedWheelTimer} that is cancelled when the response arrives, there is no periodic scan.
+ * </p>
+ *
  * @author codesssss
  * @date 18/8/2024 11:23 pm
  */
@@ -21,128 +37,192 @@ import java.util.concurrent.TimeUnit;
 public class UnprocessedRequests {
     
     /**
-     * Default timeout for unprocessed requests in milliseconds (60 seconds)
+     * Default timeout for unprocessed requests in milliseconds (30 seconds), same as the proxy default
      */
-    private static final long DEFAULT_REQUEST_TIMEOUT_MS = 60000L;
-    
-    /**
-     * Cleanup interval in milliseconds (10 seconds)
-     */
-    private static final long CLEANUP_INTERVAL_MS = 10000L;
+    private static final long DEFAULT_REQUEST_TIMEOUT_MS = 30000L;
+
+    private static final AttributeKey<ChannelRequests> CHANNEL_REQUESTS = AttributeKey.valueOf("rpcUnprocessedRequests");
     
     /**
-     * Map storing request ID to future and creation time
+     * Pending requests of every open connection
      */
-    private static final Map<String, RequestFutureWrapper> UNPROCESSED_RESPONSE_FUTURES = new ConcurrentHashMap<>();
+    private static final Set<ChannelRequests> UNPROCESSED_RESPONSE_FUTURES = ConcurrentHashMap.newKeySet();
     
     /**
-     * Scheduled executor for periodic cleanup
+     * One timer for all connections, 10ms ticks are far below any sensible rpc timeout
      */
-    private static final ScheduledExecutorService CLEANUP_EXECUTOR;
-    
-    static {
-        // Initialize cleanup task
-        CLEANUP_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "unprocessed-requests-cleanup");
-            t.setDaemon(true);
-            return t;
-        });
-        CLEANUP_EXECUTOR.scheduleAtFixedRate(UnprocessedRequests::cleanupTimeoutRequests,
-                CLEANUP_INTERVAL_MS,
-                CLEANUP_INTERVAL_MS,
-                TimeUnit.MILLISECONDS
-        );
-        
-        // Register shutdown hook
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            CLEANUP_EXECUTOR.shutdown();
-            try {
-                if (!CLEANUP_EXECUTOR.awaitTermination(5, TimeUnit.SECONDS)) {
-                    CLEANUP_EXECUTOR.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                CLEANUP_EXECUTOR.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
-        }));
+    private static final Timer TIMEOUT_TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("unprocessed-requests-timer", true), 10, TimeUnit.MILLISECONDS, 512);
+
+    private final long requestTimeoutMs;
+
+    public UnprocessedRequests() {
+        this.requestTimeoutMs = ConfigResolver.getLong(RpcConfigEnum.RPC_REQUEST_TIMEOUT_MS.getPropertyValue(), DEFAULT_REQUEST_TIMEOUT_MS);
     }
     
     /**
-     * Wrapper class to store future with creation timestamp
+     * Wrapper class to store future with its timeout
      */
     private static class RequestFutureWrapper {
         final CompletableFuture<RpcResponse<Object>> future;
-        final long createTime;
+        final Timeout timeout;
         
-        RequestFutureWrapper(CompletableFuture<RpcResponse<Object>> future) {
+        RequestFutureWrapper(CompletableFuture<RpcResponse<Object>> future, Timeout timeout) {
             this.future = future;
-            this.createTime = System.currentTimeMillis();
+            this.timeout = timeout;
         }
-        
-        boolean isTimeout(long timeoutMs) {
-            return System.currentTimeMillis() - createTime > timeoutMs;
+    }
+
+    /**
+     * Pending requests of one connection. Callers, the event loop and the timer only meet on this connection's monitor.
+     */
+    private static class ChannelRequests {
+        final AtomicInteger sequence = new AtomicInteger();
+        final IntObjectMap<RequestFutureWrapper> futures = new IntObjectHashMap<>();
+        /**
+         * size of {@link #futures}, readable without taking the monitor
+         */
+        volatile int pending;
+        /**
+         * set under the monitor once the connection's requests were failed, nothing may be added after that
+         */
+        boolean closed;
+
+        RequestFutureWrapper remove(int requestId) {
+            synchronized (this) {
+                RequestFutureWrapper wrapper = futures.remove(requestId);
+                pending = futures.size();
+                return wrapper;
+            }
         }
     }
 
-    public void put(String requestId, CompletableFuture<RpcResponse<Object>> future) {
-        UNPROCESSED_RESPONSE_FUTURES.put(requestId, new RequestFutureWrapper(future));log.debug("Added unprocessed request: {}, total pending: {}", requestId, UNPROCESSED_RESPONSE_FUTURES.size());
+    /**
+     * Register a request about to be written to {@code channel}
+     *
+     * @return the requestId to put into the message header
+     */
+    public int put(Channel channel, CompletableFuture<RpcResponse<Object>> future) {
+        ChannelRequests requests = requestsOf(channel);
+        int requestId = requests.sequence.incrementAndGet();
+        Timeout timeout = TIMEOUT_TIMER.newTimeout(t -> expire(requests, requestId), requestTimeoutMs, TimeUnit.MILLISECONDS);
+        synchronized (requests) {
+            if (!requests.closed) {
+                requests.futures.put(requestId, new RequestFutureWrapper(future, timeout));
+                requests.pending = requests.futures.size();
+                log.debug("Added unprocessed request: {}, channel: {}", requestId, channel);
+                return requestId;
+            }
+        }
+        // the connection closed after the caller checked it, its pending requests were already failed
+        timeout.cancel();
+        future.completeExceptionally(new RpcException("Connection closed: " + channel.remoteAddress()));
+        return requestId;
     }
 
-    public void complete(RpcResponse<Object> rpcResponse) {
-        RequestFutureWrapper wrapper = UNPROCESSED_RESPONSE_FUTURES.remove(rpcResponse.getRequestId());
+    public void complete(Channel channel, int requestId, RpcResponse<Object> rpcResponse) {
+        RequestFutureWrapper wrapper = take(channel, requestId);
         if (wrapper != null) {
+            wrapper.timeout.cancel();
             wrapper.future.complete(rpcResponse);
-            log.debug("Completed request: {}, remaining pending: {}", rpcResponse.getRequestId(), UNPROCESSED_RESPONSE_FUTURES.size());
+            log.debug("Completed request: {}, channel: {}", requestId, channel);
         } else {
-            log.warn("Received response for unknown or already completed request: {}", rpcResponse.getRequestId());
+            log.warn("Received response for unknown or already completed request: {}", requestId);
         }
     }
     
     /**
      * Remove a request from the map (e.g., when cancelled or timed out externally)
      */
-    public void remove(String requestId) {
-        RequestFutureWrapper wrapper = UNPROCESSED_RESPONSE_FUTURES.remove(requestId);
+    public void remove(Channel channel, int requestId) {
+        RequestFutureWrapper wrapper = take(channel, requestId);
         if (wrapper != null) {
-            log.debug("Removed request: {}, remaining pending: {}", requestId, UNPROCESSED_RESPONSE_FUTURES.size());}
+            wrapper.timeout.cancel();
+            log.debug("Removed request: {}, channel: {}", requestId, channel);
+        }
+    }
+
+    /**
+     * Fail every request still pending on a connection that went away, no response can arrive for them any more
+     */
+    public void failAll(Channel channel, Throwable cause) {
+        ChannelRequests requests = channel.attr(CHANNEL_REQUESTS).getAndSet(null);
+        if (requests == null) {
+            return;
+        }
+        UNPROCESSED_RESPONSE_FUTURES.remove(requests);
+        RequestFutureWrapper[] pending;
+        synchronized (requests) {
+            requests.closed = true;
+            pending = requests.futures.values().toArray(new RequestFutureWrapper[0]);
+            requests.futures.clear();
+            requests.pending = 0;
+        }
+        for (RequestFutureWrapper wrapper : pending) {
+            wrapper.timeout.cancel();
+            wrapper.future.completeExceptionally(cause);
+        }
+        if (pending.length > 0) {
+            log.warn("Failed {} pending requests of closed channel {}", pending.length, channel);
+        }
     }
     
     /**
      * Get the number of pending requests
      */
     public int getPendingCount() {
-        return UNPROCESSED_RESPONSE_FUTURES.size();
+        int count = 0;
+        for (ChannelRequests requests : UNPROCESSED_RESPONSE_FUTURES) {
+            synchronized (requests) {
+                count += requests.futures.size();
+            }
+        }
+        return count;
     }
-    
+
     /**
-     * Cleanup timeout requests periodically
+     * Get the number of requests pending on one connection
      */
-    private static void cleanupTimeoutRequests() {
-        if (UNPROCESSED_RESPONSE_FUTURES.isEmpty()) {
-            return;
-        }
-        
-        int cleanedCount = 0;
-        Iterator<Map.Entry<String, RequestFutureWrapper>> iterator = UNPROCESSED_RESPONSE_FUTURES.entrySet().iterator();
-        
-        while (iterator.hasNext()) {
-            Map.Entry<String, RequestFutureWrapper> entry = iterator.next();
-            RequestFutureWrapper wrapper = entry.getValue();
-            
-            if (wrapper.isTimeout(DEFAULT_REQUEST_TIMEOUT_MS)) {
-                iterator.remove();
-                // Complete exceptionally to notify waiting threads
-                wrapper.future.completeExceptionally(
-                        new RuntimeException("Request timeout and cleaned up, requestId: " + entry.getKey())
-                );
-                cleanedCount++;
-                log.warn("Cleaned up timeout request: {}, age: {}ms", 
-                        entry.getKey(), System.currentTimeMillis() - wrapper.createTime);
+    public int getPendingCount(Channel channel) {
+        ChannelRequests requests = channel.attr(CHANNEL_REQUESTS).get();
+        return requests == null ? 0 : requests.pending;
+    }
+
+    private static ChannelRequests requestsOf(Channel channel) {
+        ChannelRequests requests = channel.attr(CHANNEL_REQUESTS).get();
+        if (requests == null) {
+            ChannelRequests created = new ChannelRequests();
+            requests = channel.attr(CHANNEL_REQUESTS).setIfAbsent(created);
+            if (requests == null) {
+                requests = created;
+                UNPROCESSED_RESPONSE_FUTURES.add(created);
+                if (!channel.isActive()) {
+                    // closed meanwhile, failAll may have run before the set and would never release these
+                    channel.attr(CHANNEL_REQUESTS).compareAndSet(created, null);
+                    UNPROCESSED_RESPONSE_FUTURES.remove(created);
+                    synchronized (created) {
+                        created.closed = true;
+                    }
+                }
             }
         }
-        
-        if (cleanedCount > 0) {
-            log.info("Cleaned up {} timeout requests, remaining pending: {}", cleanedCount, UNPROCESSED_RESPONSE_FUTURES.size());
+        return requests;
+    }
+
+    private static RequestFutureWrapper take(Channel channel, int requestId) {
+        ChannelRequests requests = channel.attr(CHANNEL_REQUESTS).get();
+        if (requests == null) {
+            return null;
+        }
+        return requests.remove(requestId);
+    }
+
+    private void expire(ChannelRequests requests, int requestId) {
+        RequestFutureWrapper wrapper = requests.remove(requestId);
+        if (wrapper != null) {
+            wrapper.future.completeExceptionally(
+                    new TimeoutException("Request timeout after " + requestTimeoutMs + "ms, requestId: " + requestId));
+            log.warn("Request timeout: {}, after {}ms", requestId, requestTimeoutMs);
         }
     }
 }
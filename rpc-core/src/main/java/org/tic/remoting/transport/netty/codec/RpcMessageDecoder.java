@@ -1,11 +1,14 @@
 package org.tic.remoting.transport.netty.codec;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import lombok.extern.slf4j.Slf4j;
 import org.tic.compress.Compress;
+import org.tic.config.ConfigResolver;
 import org.tic.enums.CompressTypeEnum;
+import org.tic.enums.RpcConfigEnum;
 import org.tic.enums.SerializationTypeEnum;
 import org.tic.extension.ExtensionLoader;
 import org.tic.remoting.constants.RpcConstants;
@@ -13,6 +16,7 @@ import org.tic.remoting.dto.RpcMessage;
 import org.tic.remoting.dto.RpcRequest;
 import org.tic.remoting.dto.RpcResponse;
 import org.tic.serialize.Serializer;
+import org.tic.utils.CodecMetrics;
 
 import java.util.Arrays;
 
@@ -40,6 +44,8 @@ import java.util.Arrays;
  */
 @Slf4j
 public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
+    private static final boolean ZERO_COPY = ConfigResolver.getBoolean(RpcConfigEnum.CODEC_ZERO_COPY.getPropertyValue(), false);
+
     public RpcMessageDecoder() {
         // lengthFieldOffset: magic code is 4B, and version is 1B, and then full length. so value is 5
         // lengthFieldLength: full length is 4B. so value is 4
@@ -70,7 +76,7 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
             ByteBuf frame = (ByteBuf) decoded;
             if (frame.readableBytes() >= RpcConstants.TOTAL_LENGTH) {
                 try {
-                    return decodeFrame(frame);
+                    return decodeFrame(frame, ctx.alloc());
                 } catch (Exception e) {
                     log.error("Decode frame error!", e);
                     throw e;
@@ -84,7 +90,7 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
     }
 
 
-    private Object decodeFrame(ByteBuf in) {
+    private Object decodeFrame(ByteBuf in, ByteBufAllocator allocator) {
         // note: must read ByteBuf in order
         checkMagicNumber(in);
         checkVersion(in);
@@ -96,6 +102,7 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
         int requestId = in.readInt();
         RpcMessage rpcMessage = RpcMessage.builder()
                 .codec(codecType)
+                .compress(compressType)
                 .requestId(requestId)
                 .messageType(messageType).build();
         if (messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
@@ -108,30 +115,76 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
         }
         int bodyLength = fullLength - RpcConstants.HEAD_LENGTH;
         if (bodyLength > 0) {
-            byte[] bs = new byte[bodyLength];
-            in.readBytes(bs);
-            // decompress the bytes
-            String compressName = CompressTypeEnum.getName(compressType);
-            Compress compress = ExtensionLoader.getExtensionLoader(Compress.class)
-                    .getExtension(compressName);
-            bs = compress.decompress(bs);
-            // deserialize the object
-            String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
-            log.info("codec name: [{}] ", codecName);
-            Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
-                    .getExtension(codecName);
-            if (messageType == RpcConstants.REQUEST_TYPE) {
-                RpcRequest tmpValue = serializer.deserialize(bs, RpcRequest.class);
-                rpcMessage.setData(tmpValue);
-            } else {
-                RpcResponse tmpValue = serializer.deserialize(bs, RpcResponse.class);
-                rpcMessage.setData(tmpValue);
-            }
+            Object body = ZERO_COPY
+                    ? decodeBodyZeroCopy(in, bodyLength, compressType, codecType, messageType, allocator)
+                    : decodeBody(in, bodyLength, compressType, codecType, messageType);
+            rpcMessage.setData(body);
+            CodecMetrics.recordDecoded();
         }
         return rpcMessage;
 
     }
 
+    private Object decodeBody(ByteBuf in, int bodyLength, byte compressType, byte codecType, byte messageType) {
+        byte[] bs = new byte[bodyLength];
+        in.readBytes(bs);
+        CodecMetrics.recordHeapCopy(bs.length);
+        if (compressType != CompressTypeEnum.NONE.getCode()) {
+            // decompress the bytes
+            bs = getCompress(compressType).decompress(bs);
+            CodecMetrics.recordHeapCopy(bs.length);
+        }
+        // deserialize the object
+        return deserialize(getSerializer(codecType), bs, messageType);
+    }
+
+    /**
+     * Inflate the body from a slice of the frame into a pooled direct buffer, so the wire bytes
+     * are never copied into a heap array of their own.
+     */
+    private Object decodeBodyZeroCopy(ByteBuf in, int bodyLength, byte compressType, byte codecType,
+                                      byte messageType, ByteBufAllocator allocator) {
+        ByteBuf body = in.readSlice(bodyLength);
+        if (compressType == CompressTypeEnum.NONE.getCode()) {
+            // uncompressed body is deserialized right off the frame
+            return deserialize(getSerializer(codecType), body, messageType);
+        }
+        ByteBuf plain = allocator.directBuffer(bodyLength);
+        try {
+            getCompress(compressType).decompress(body, plain);
+            return deserialize(getSerializer(codecType), plain, messageType);
+        } finally {
+            plain.release();
+        }
+    }
+
+    private Object deserialize(Serializer serializer, ByteBuf body, byte messageType) {
+        if (messageType == RpcConstants.REQUEST_TYPE) {
+            return serializer.deserialize(body, RpcRequest.class);
+        }
+        return serializer.deserialize(body, RpcResponse.class);
+    }
+
+    private Object deserialize(Serializer serializer, byte[] bs, byte messageType) {
+        if (messageType == RpcConstants.REQUEST_TYPE) {
+            return serializer.deserialize(bs, RpcRequest.class);
+        }
+        return serializer.deserialize(bs, RpcResponse.class);
+    }
+
+    private Compress getCompress(byte compressType) {
+        String compressName = CompressTypeEnum.getName(compressType);
+        return ExtensionLoader.getExtensionLoader(Compress.class)
+                .getExtension(compressName);
+    }
+
+    private Serializer getSerializer(byte codecType) {
+        String codecName = SerializationTypeEnum.getName(codecType);
+        log.info("codec name: [{}] ", codecName);
+        return ExtensionLoader.getExtensionLoader(Serializer.class)
+                .getExtension(codecName);
+    }
+
     private void checkVersion(ByteBuf in) {
         // read the version and compare
         byte version = in.readByte();
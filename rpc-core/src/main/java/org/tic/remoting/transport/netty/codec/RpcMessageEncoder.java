@@ -5,25 +5,51 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.extern.slf4j.Slf4j;
 import org.tic.compress.Compress;
+import org.tic.config.ConfigResolver;
 import org.tic.enums.CompressTypeEnum;
+import org.tic.enums.RpcConfigEnum;
 import org.tic.enums.SerializationTypeEnum;
 import org.tic.extension.ExtensionLoader;
 import org.tic.remoting.constants.RpcConstants;
 import org.tic.remoting.dto.RpcMessage;
 import org.tic.serialize.Serializer;
-
-import java.util.concurrent.atomic.AtomicInteger;
+import org.tic.utils.CodecMetrics;
 
 /**
+ * Encodes {@link RpcMessage}. {@link RpcMessage#getCompress()} is only the preferred compression:
+ * bodies below {@code rpc.compress.min.bytes}, or bodies that do not shrink, are sent as {@link CompressTypeEnum#NONE},
+ * and the compress byte of the header always tells what was actually applied.
+ *
  * @author codesssss
  * @date 18/8/2024 5:29 pm
  */
 @Slf4j
 public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
-    private static final AtomicInteger ATOMIC_INTEGER = new AtomicInteger(0);
+    private static final boolean ZERO_COPY = ConfigResolver.getBoolean(RpcConfigEnum.CODEC_ZERO_COPY.getPropertyValue(), false);
+    private static final int COMPRESS_MIN_BYTES = ConfigResolver.getInt(RpcConfigEnum.COMPRESS_MIN_BYTES.getPropertyValue(), 1024);
+    /**
+     * offset of the compress byte: magic(4) + version(1) + full length(4) + messageType(1) + codec(1)
+     */
+    private static final int COMPRESS_OFFSET = RpcConstants.MAGIC_NUMBER.length + 7;
+    private static final int MIN_SIZE_HINT = 256;
+    private static final int MAX_SIZE_HINT = 64 * 1024;
+
+    /**
+     * expected frame size on this channel: follows bigger frames right away and decays slowly after smaller ones
+     */
+    private int sizeHint = MIN_SIZE_HINT;
+
+    /**
+     * Always a direct buffer from the channel's allocator, sized after recent frames so the body rarely has to grow it
+     */
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, RpcMessage msg, boolean preferDirect) {
+        return ctx.alloc().directBuffer(sizeHint);
+    }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, RpcMessage rpcMessage, ByteBuf out) {
+        int startIndex = out.writerIndex();
         try {
             out.writeBytes(RpcConstants.MAGIC_NUMBER);
             out.writeByte(RpcConstants.VERSION);
@@ -32,38 +58,106 @@ public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
             byte messageType = rpcMessage.getMessageType();
             out.writeByte(messageType);
             out.writeByte(rpcMessage.getCodec());
-            out.writeByte(CompressTypeEnum.GZIP.getCode());
-            out.writeInt(ATOMIC_INTEGER.getAndIncrement());
-            // build full length
-            byte[] bodyBytes = null;
-            int fullLength = RpcConstants.HEAD_LENGTH;
+            // filled in once we know whether the body was compressed
+            out.writeByte(CompressTypeEnum.NONE.getCode());
+            out.writeInt(rpcMessage.getRequestId());
             // if messageType is not heartbeat message,fullLength = head length + body length
             if (messageType != RpcConstants.HEARTBEAT_REQUEST_TYPE
                     && messageType != RpcConstants.HEARTBEAT_RESPONSE_TYPE) {
-                // serialize the object
-                String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
-                log.info("codec name: [{}] ", codecName);
-                Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
-                        .getExtension(codecName);
-                bodyBytes = serializer.serialize(rpcMessage.getData());
-                // compress the bytes
-                String compressName = CompressTypeEnum.getName(rpcMessage.getCompress());
-                Compress compress = ExtensionLoader.getExtensionLoader(Compress.class)
-                        .getExtension(compressName);
-                bodyBytes = compress.compress(bodyBytes);
-                fullLength += bodyBytes.length;
-            }
-
-            if (bodyBytes != null) {
-                out.writeBytes(bodyBytes);
+                byte appliedCompress = ZERO_COPY
+                        ? encodeBodyZeroCopy(ctx, rpcMessage, out)
+                        : encodeBody(rpcMessage, out);
+                out.setByte(startIndex + COMPRESS_OFFSET, appliedCompress);
+                CodecMetrics.recordEncoded();
             }
-            int writeIndex = out.writerIndex();
-            out.writerIndex(writeIndex - fullLength + RpcConstants.MAGIC_NUMBER.length + 1);
-            out.writeInt(fullLength);
-            out.writerIndex(writeIndex);
+            // build full length
+            int fullLength = out.writerIndex() - startIndex;
+            out.setInt(startIndex + RpcConstants.MAGIC_NUMBER.length + 1, fullLength);
+            sizeHint = Math.min(MAX_SIZE_HINT, Math.max(MIN_SIZE_HINT, Math.max(fullLength, sizeHint - (sizeHint >> 3))));
         } catch (Exception e) {
+            // drop the half written frame, otherwise the peer reads a corrupted length field
+            out.writerIndex(startIndex);
             log.error("Encode request error!", e);
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the compress type that was actually applied to the body
+     */
+    private byte encodeBody(RpcMessage rpcMessage, ByteBuf out) {
+        // serialize the object
+        byte[] bodyBytes = getSerializer(rpcMessage).serialize(rpcMessage.getData());
+        CodecMetrics.recordHeapCopy(bodyBytes.length);
+        if (!shouldCompress(rpcMessage, bodyBytes.length)) {
+            out.writeBytes(bodyBytes);
+            return CompressTypeEnum.NONE.getCode();
+        }
+        // compress the bytes
+        byte[] compressed = getCompress(rpcMessage).compress(bodyBytes);
+        CodecMetrics.recordHeapCopy(compressed.length);
+        if (compressed.length >= bodyBytes.length) {
+            CodecMetrics.recordCompressSkipped();
+            out.writeBytes(bodyBytes);
+            return CompressTypeEnum.NONE.getCode();
+        }
+        out.writeBytes(compressed);
+        return rpcMessage.getCompress();
+    }
+
+    /**
+     * Serialize into a pooled direct buffer and compress it straight into the outbound buffer,
+     * the body never becomes a heap byte[]
+     *
+     * @return the compress type that was actually applied to the body
+     */
+    private byte encodeBodyZeroCopy(ChannelHandlerContext ctx, RpcMessage rpcMessage, ByteBuf out) {
+        ByteBuf body = ctx.alloc().directBuffer();
+        try {
+            getSerializer(rpcMessage).serialize(rpcMessage.getData(), body);
+            int bodyLength = body.readableBytes();
+            if (!shouldCompress(rpcMessage, bodyLength)) {
+                out.writeBytes(body);
+                return CompressTypeEnum.NONE.getCode();
+            }
+            int bodyStart = body.readerIndex();
+            int outStart = out.writerIndex();
+            getCompress(rpcMessage).compress(body, out);
+            if (out.writerIndex() - outStart >= bodyLength) {
+                // compression did not pay off, rewind and send the plain body
+                CodecMetrics.recordCompressSkipped();
+                out.writerIndex(outStart);
+                body.readerIndex(bodyStart);
+                out.writeBytes(body);
+                return CompressTypeEnum.NONE.getCode();
+            }
+            return rpcMessage.getCompress();
+        } finally {
+            body.release();
+        }
+    }
+
+    private boolean shouldCompress(RpcMessage rpcMessage, int bodyLength) {
+        if (rpcMessage.getCompress() == CompressTypeEnum.NONE.getCode()) {
+            return false;
+        }
+        if (bodyLength < COMPRESS_MIN_BYTES) {
+            CodecMetrics.recordCompressSkipped();
+            return false;
+        }
+        return true;
+    }
+
+    private Serializer getSerializer(RpcMessage rpcMessage) {
+        String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
+        log.info("codec name: [{}] ", codecName);
+        return ExtensionLoader.getExtensionLoader(Serializer.class)
+                .getExtension(codecName);
+    }
+
+    private Compress getCompress(RpcMessage rpcMessage) {
+        String compressName = CompressTypeEnum.getName(rpcMessage.getCompress());
+        return ExtensionLoader.getExtensionLoader(Compress.class)
+                .getExtension(compressName);
+    }
+}
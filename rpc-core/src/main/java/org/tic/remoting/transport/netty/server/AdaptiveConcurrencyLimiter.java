@@ -0,0 +1,197 @@
+package org.tic.remoting.transport.netty.server;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrency limit per service method that follows measured latency, after TCP Vegas.
+ * <p>
+ * Each method keeps the lowest latency seen recently as its no-load latency. From the smoothed latency of completed
+ * requests it estimates how many requests are queueing, {@code limit * (1 - expectedRtt / rtt)}: the limit grows while
+ * that queue is short and shrinks once it gets long, so cheap methods can run wide while an expensive or degraded one is
+ * held back before its latency explodes. The no-load latency is re-measured every few hundred samples so the limit can
+ * follow a method whose baseline got slower. Latency is taken from admission to completion and includes the executor
+ * queue.
+ * </p>
+ * <p>
+ * Latency up to 1.5 times the no-load latency, or up to 1ms above it, is taken as jitter rather than queueing:
+ * sub-millisecond methods on a busy CPU see jitter far above their no-load latency and would otherwise be throttled
+ * to a handful of concurrent requests.
+ * </p>
+ * <p>
+ * Samples are applied by one thread at a time without blocking: a sample completing while another one is being
+ * applied is skipped, so under load the limit follows a subset of the requests and completing requests never wait
+ * on each other.
+ * </p>
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * Admits everything, used when adaptive limiting is off
+     */
+    private static final Permit UNLIMITED = dropped -> {
+    };
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int initialLimit;
+    private final int maxLimit;
+    private final LongSupplier nanoClock;
+    private final Map<Object, MethodLimit> limits = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyLimiter(boolean enabled, int minLimit, int initialLimit, int maxLimit) {
+        this(enabled, minLimit, initialLimit, maxLimit, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(boolean enabled, int minLimit, int initialLimit, int maxLimit, LongSupplier nanoClock) {
+        this.enabled = enabled;
+        this.nanoClock = nanoClock;
+        this.maxLimit = Math.max(1, maxLimit);
+        this.minLimit = Math.min(Math.max(1, minLimit), this.maxLimit);
+        this.initialLimit = Math.min(Math.max(this.minLimit, initialLimit), this.maxLimit);
+    }
+
+    /**
+     * @param method key of the called method
+     * @return a permit to release once the request completes, null if the method is at its limit
+     */
+    public Permit tryAcquire(Object method) {
+        if (!enabled) {
+            return UNLIMITED;
+        }
+        return limits.computeIfAbsent(method, m -> new MethodLimit(minLimit, initialLimit, maxLimit, nanoClock)).tryAcquire();
+    }
+
+    /**
+     * @return how long a rejected caller should wait before retrying the method, about one request's latency
+     */
+    public long retryAfterMs(Object method) {
+        MethodLimit limit = limits.get(method);
+        return limit == null ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis((long) limit.smoothedRttNanos));
+    }
+
+    /**
+     * @return current limit of the method, -1 if it has none yet
+     */
+    public int getLimit(Object method) {
+        MethodLimit limit = limits.get(method);
+        return limit == null ? -1 : limit.limit;
+    }
+
+    @FunctionalInterface
+    public interface Permit {
+        /**
+         * @param dropped true if the request never ran, e.g. the executor rejected it
+         */
+        void release(boolean dropped);
+    }
+
+    private static final class MethodLimit {
+        private static final double RTT_SMOOTHING = 0.1;
+        private static final double RTT_TOLERANCE = 1.5;
+        private static final long JITTER_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+        private static final int PROBE_MULTIPLIER = 30;
+
+        private final int minLimit;
+        private final int maxLimit;
+        private final LongSupplier nanoClock;
+        private final AtomicInteger inflight = new AtomicInteger();
+        /**
+         * held by the thread applying a sample, guards the fields below that are not volatile
+         */
+        private final AtomicBoolean updating = new AtomicBoolean();
+        private volatile int limit;
+        private volatile double smoothedRttNanos;
+        private long noLoadRttNanos = Long.MAX_VALUE;
+        private int samplesUntilProbe;
+
+        MethodLimit(int minLimit, int initialLimit, int maxLimit, LongSupplier nanoClock) {
+            this.limit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.nanoClock = nanoClock;
+            this.samplesUntilProbe = nextProbe(initialLimit);
+        }
+
+        Permit tryAcquire() {
+            int current;
+            do {
+                current = inflight.get();
+                if (current >= limit) {
+                    return null;
+                }
+            } while (!inflight.compareAndSet(current, current + 1));
+            long start = nanoClock.getAsLong();
+            int inflightAtStart = current + 1;
+            return dropped -> {
+                inflight.decrementAndGet();
+                if (updating.compareAndSet(false, true)) {
+                    try {
+                        long rttNanos = nanoClock.getAsLong() - start;
+                        if (rttNanos > 0) {
+                            onSample(rttNanos, inflightAtStart, dropped);
+                        }
+                    } finally {
+                        updating.set(false);
+                    }
+                }
+            };
+        }
+
+        private void onSample(long rttNanos, int inflightAtStart, boolean dropped) {
+            double rtt = smoothedRttNanos == 0 ? rttNanos : smoothedRttNanos + RTT_SMOOTHING * (rttNanos - smoothedRttNanos);
+            smoothedRttNanos = rtt;
+            if (--samplesUntilProbe <= 0) {
+                // forget the old baseline, this sample becomes the new no-load latency
+                noLoadRttNanos = rttNanos;
+                samplesUntilProbe = nextProbe(limit);
+            } else if (rttNanos < noLoadRttNanos) {
+                noLoadRttNanos = rttNanos;
+            }
+            int current = limit;
+            int step = log10(current);
+            int newLimit;
+            if (dropped) {
+                newLimit = current - step;
+            } else if (inflightAtStart * 2 < current) {
+                // far below the limit, latency says nothing about whether it is right
+                return;
+            } else {
+                // a single slow sample moves the smoothed latency a little, only sustained queueing moves the limit
+                double expectedRtt = Math.max(noLoadRttNanos * RTT_TOLERANCE, noLoadRttNanos + JITTER_NANOS);
+                int queue = rtt <= expectedRtt ? 0 : (int) Math.ceil(current * (1 - expectedRtt / rtt));
+                if (queue <= step) {
+                    newLimit = current + 6 * step;
+                } else if (queue < 3 * step) {
+                    newLimit = current + step;
+                } else if (queue > 6 * step) {
+                    newLimit = current - step;
+                } else {
+                    return;
+                }
+            }
+            newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+            if (newLimit != current) {
+                limit = newLimit;
+                log.debug("Concurrency limit {} -> {}, rtt={}us, noLoadRtt={}us", current, newLimit,
+                        (long) rtt / 1000, noLoadRttNanos / 1000);
+            }
+        }
+
+        private static int nextProbe(int limit) {
+            return PROBE_MULTIPLIER * Math.max(limit, 10) + ThreadLocalRandom.current().nextInt(PROBE_MULTIPLIER * 10);
+        }
+
+        private static int log10(int limit) {
+            return Math.max(1, (int) Math.log10(limit));
+        }
+    }
+}
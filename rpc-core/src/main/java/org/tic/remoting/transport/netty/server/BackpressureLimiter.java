@@ -1,19 +1,37 @@
 package org.tic.remoting.transport.netty.server;
 
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Simple backpressure limiter based on concurrent in-flight and executor queue depth.
+ * <p>
+ * With virtual threads there is no queue to watch, so {@link #semaphore(int)} builds a limiter that
+ * hands out a fixed number of permits instead; every successful {@link #tryAcquire} must be paired with {@link #release()}.
+ * </p>
  */
 public class BackpressureLimiter {
 
     private final int maxConcurrent;
     private final int queueThreshold;
+    private final Semaphore permits;
     private final AtomicLong rejected = new AtomicLong(0);
 
     public BackpressureLimiter(int maxConcurrent, int queueThreshold) {
+        this(maxConcurrent, queueThreshold, null);
+    }
+
+    private BackpressureLimiter(int maxConcurrent, int queueThreshold, Semaphore permits) {
         this.maxConcurrent = maxConcurrent;
         this.queueThreshold = queueThreshold;
+        this.permits = permits;
+    }
+
+    /**
+     * @param maxConcurrent number of requests allowed to execute at the same time
+     */
+    public static BackpressureLimiter semaphore(int maxConcurrent) {
+        return new BackpressureLimiter(maxConcurrent, Integer.MAX_VALUE, new Semaphore(maxConcurrent));
     }
 
     public boolean allow(int currentInflight, int currentQueueSize) {
@@ -28,6 +46,29 @@ public class BackpressureLimiter {
         return true;
     }
 
+    /**
+     * Admit a request, using the semaphore if there is one and the in-flight/queue thresholds otherwise
+     */
+    public boolean tryAcquire(int currentInflight, int currentQueueSize) {
+        if (permits == null) {
+            return allow(currentInflight, currentQueueSize);
+        }
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Give back the permit of a request admitted by {@link #tryAcquire}
+     */
+    public void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
     public long getRejected() {
         return rejected.get();
     }
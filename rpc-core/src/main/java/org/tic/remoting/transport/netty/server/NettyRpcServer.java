@@ -2,9 +2,7 @@ package org.tic.remoting.transport.netty.server;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.timeout.IdleStateHandler;
@@ -14,10 +12,14 @@ import org.springframework.stereotype.Component;
 import org.tic.config.ConfigResolver;
 import org.tic.config.CustomShutdownHook;
 import org.tic.config.RpcServiceConfig;
+import org.tic.enums.CompressTypeEnum;
 import org.tic.enums.RpcConfigEnum;
+import org.tic.exception.RpcException;
 import org.tic.factory.SingletonFactory;
 import org.tic.provider.ServiceProvider;
 import org.tic.provider.impl.ZkServiceProviderImpl;
+import org.tic.remoting.transport.netty.NettyTransport;
+import org.tic.remoting.transport.netty.TransportMetrics;
 import org.tic.remoting.transport.netty.codec.RpcMessageDecoder;
 import org.tic.remoting.transport.netty.codec.RpcMessageEncoder;
 import org.tic.remoting.transport.netty.server.BackpressureLimiter;
@@ -27,7 +29,11 @@ import org.tic.utils.threadpoolutils.CustomThreadPoolConfig;
 import org.tic.utils.threadpoolutils.ThreadPoolFactoryUtil;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -40,10 +46,15 @@ public class NettyRpcServer {
 
     public static final int PORT = 9998;
     private static final String BIZ_POOL_NAME = "service-handler-pool";
+    private static final String BIZ_MODE_VIRTUAL = "virtual";
+    /**
+     * Default concurrency limit of virtual thread mode, requests mostly wait on downstream I/O there
+     */
+    private static final int DEFAULT_VIRTUAL_MAX_CONCURRENT = 10000;
 
     private int bizQueueCapacity;
     private int bizMaxThreads;
-    private volatile Channel serverChannel;
+    private volatile List<Channel> serverChannels = Collections.emptyList();
 
     private final ServiceProvider serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
 
@@ -54,21 +65,43 @@ public class NettyRpcServer {
     @SneakyThrows
     public void start() {
         String host = InetAddress.getLocalHost().getHostAddress();
-        EventLoopGroup bossGroup = createEventLoopGroup(RpcConfigEnum.SERVER_BOSS_THREADS, 1);
+        // fail at startup on a misconfigured compress, the same way the client does
+        byte responseCompress = resolveCompress(ConfigResolver.getString(RpcConfigEnum.COMPRESS.getPropertyValue(), CompressTypeEnum.GZIP.getName()));
+        int bossThreads = ConfigResolver.getInt(RpcConfigEnum.SERVER_BOSS_THREADS.getPropertyValue(), 1);
+        EventLoopGroup bossGroup = NettyTransport.newEventLoopGroup(Math.max(1, bossThreads));
+        TransportMetrics.startLogging();
+        // one listening socket per accept thread when the kernel can balance connections between them
+        boolean reusePort = NettyTransport.supportsReusePort()
+                && ConfigResolver.getBoolean(RpcConfigEnum.SERVER_REUSEPORT.getPropertyValue(), true);
+        int acceptSockets = reusePort ? Math.max(1, bossThreads) : 1;
         EventLoopGroup workerGroup = createEventLoopGroup(RpcConfigEnum.SERVER_WORKER_THREADS, 0);
-        ExecutorService bizExecutor = buildBizExecutor();
+        boolean virtual = BIZ_MODE_VIRTUAL.equalsIgnoreCase(ConfigResolver.getString(RpcConfigEnum.SERVER_BIZ_MODE.getPropertyValue(), "pool"));
+        ExecutorService bizExecutor = virtual ? buildVirtualBizExecutor() : buildBizExecutor();
         ServerStateManager stateManager = new ServerStateManager();
-        int maxConcurrentDefault = bizMaxThreads + bizQueueCapacity;
-        int queueThreshold = (int) Math.max(1, bizQueueCapacity * 0.8);
-        BackpressureLimiter limiter = new BackpressureLimiter(
-                ConfigResolver.getInt(RpcConfigEnum.SERVER_MAX_CONCURRENT_REQUESTS.getPropertyValue(), maxConcurrentDefault),
-                ConfigResolver.getInt(RpcConfigEnum.SERVER_BACKPRESSURE_QUEUE_THRESHOLD.getPropertyValue(), queueThreshold)
-        );
+        BackpressureLimiter limiter;
+        if (virtual) {
+            // no queue in front of virtual threads, cap the requests executing at once instead
+            limiter = BackpressureLimiter.semaphore(
+                    ConfigResolver.getInt(RpcConfigEnum.SERVER_MAX_CONCURRENT_REQUESTS.getPropertyValue(), DEFAULT_VIRTUAL_MAX_CONCURRENT));
+        } else {
+            int maxConcurrentDefault = bizMaxThreads + bizQueueCapacity;
+            int queueThreshold = (int) Math.max(1, bizQueueCapacity * 0.8);
+            limiter = new BackpressureLimiter(
+                    ConfigResolver.getInt(RpcConfigEnum.SERVER_MAX_CONCURRENT_REQUESTS.getPropertyValue(), maxConcurrentDefault),
+                    ConfigResolver.getInt(RpcConfigEnum.SERVER_BACKPRESSURE_QUEUE_THRESHOLD.getPropertyValue(), queueThreshold)
+            );
+        }
+        // per method limits that follow latency, the static limiter above stays as the executor's hard cap
+        AdaptiveConcurrencyLimiter adaptiveLimiter = new AdaptiveConcurrencyLimiter(
+                ConfigResolver.getBoolean(RpcConfigEnum.SERVER_LIMITER_ADAPTIVE.getPropertyValue(), true),
+                ConfigResolver.getInt(RpcConfigEnum.SERVER_LIMITER_MIN.getPropertyValue(), 2),
+                ConfigResolver.getInt(RpcConfigEnum.SERVER_LIMITER_INITIAL.getPropertyValue(), 20),
+                ConfigResolver.getInt(RpcConfigEnum.SERVER_LIMITER_MAX.getPropertyValue(), 1000));
         CustomShutdownHook.getCustomShutdownHook().register(stateManager, new java.net.InetSocketAddress(host, PORT), this::closeServerChannel, bossGroup, workerGroup);
         try {
             ServerBootstrap b = new ServerBootstrap();
+            NettyTransport.configureServer(b, acceptSockets > 1);
             b.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
                     // TCP默认开启了 Nagle 算法，该算法的作用是尽可能的发送大数据快，减少网络传输。TCP_NODELAY 参数的作用就是控制是否启用 Nagle 算法。
                     .childOption(ChannelOption.TCP_NODELAY, true)
                     // 是否开启 TCP 底层心跳机制
@@ -85,15 +118,21 @@ public class NettyRpcServer {
                             p.addLast(new IdleStateHandler(30, 0, 0, TimeUnit.SECONDS));
                             p.addLast(new RpcMessageEncoder());
                             p.addLast(new RpcMessageDecoder());
-                            p.addLast(new NettyRpcServerHandler(bizExecutor, limiter, stateManager, BIZ_POOL_NAME));
+                            p.addLast(new NettyRpcServerHandler(bizExecutor, limiter, adaptiveLimiter, stateManager, BIZ_POOL_NAME, responseCompress));
                         }
                     });
 
-            // 绑定端口，同步等待绑定成功
-            ChannelFuture f = b.bind(host, PORT).sync();
-            serverChannel = f.channel();
+            // 绑定端口，同步等待绑定成功；SO_REUSEPORT 时每个 accept 线程绑定一个监听 socket
+            List<Channel> channels = new ArrayList<>(acceptSockets);
+            for (int i = 0; i < acceptSockets; i++) {
+                channels.add(b.bind(host, PORT).sync().channel());
+            }
+            serverChannels = channels;
+            log.info("Server bound {} listening socket(s) on port {}", acceptSockets, PORT);
             // 等待服务端监听端口关闭
-            f.channel().closeFuture().sync();
+            for (Channel channel : channels) {
+                channel.closeFuture().sync();
+            }
         } catch (InterruptedException e) {
             log.error("occur exception when start server:", e);
         } finally {
@@ -104,12 +143,16 @@ public class NettyRpcServer {
         }
     }
 
-    private EventLoopGroup createEventLoopGroup(RpcConfigEnum key, int defaultThreads) {
-        int threads = ConfigResolver.getInt(key.getPropertyValue(), defaultThreads);
-        if (threads > 0) {
-            return new NioEventLoopGroup(threads);
+    private static byte resolveCompress(String compress) {
+        CompressTypeEnum compressType = CompressTypeEnum.getByName(compress);
+        if (compressType == null) {
+            throw new RpcException("Unknown compress: " + compress);
         }
-        return new NioEventLoopGroup();
+        return compressType.getCode();
+    }
+
+    private EventLoopGroup createEventLoopGroup(RpcConfigEnum key, int defaultThreads) {
+        return NettyTransport.newEventLoopGroup(ConfigResolver.getInt(key.getPropertyValue(), defaultThreads));
     }
 
     private ExecutorService buildBizExecutor() {
@@ -126,10 +169,20 @@ public class NettyRpcServer {
         return ThreadPoolFactoryUtil.createCustomThreadPoolIfAbsent(BIZ_POOL_NAME, config);
     }
 
+    /**
+     * One virtual thread per request, for services that mostly block on downstream I/O.
+     * Note that blocking inside synchronized code still pins the carrier thread on this JDK.
+     */
+    private ExecutorService buildVirtualBizExecutor() {
+        log.info("Business executor runs on virtual threads");
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(BIZ_POOL_NAME + "-vt-", 0).factory());
+    }
+
     private void closeServerChannel() {
-        Channel channel = this.serverChannel;
-        if (channel != null && channel.isActive()) {
-            channel.close();
+        for (Channel channel : this.serverChannels) {
+            if (channel.isActive()) {
+                channel.close();
+            }
         }
     }
 
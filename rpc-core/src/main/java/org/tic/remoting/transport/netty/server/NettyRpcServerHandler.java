@@ -7,18 +7,23 @@ import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.tic.enums.CompressTypeEnum;
+import org.tic.config.ConfigResolver;
+import org.tic.enums.RpcConfigEnum;
 import org.tic.enums.RpcResponseCodeEnum;
-import org.tic.enums.SerializationTypeEnum;
 import org.tic.factory.SingletonFactory;
 import org.tic.remoting.constants.RpcConstants;
 import org.tic.remoting.dto.RpcMessage;
 import org.tic.remoting.dto.RpcRequest;
 import org.tic.remoting.dto.RpcResponse;
+import org.tic.remoting.handler.MethodTable;
 import org.tic.remoting.handler.RpcRequestHandler;
+import org.tic.remoting.transport.netty.FlushBatcher;
+import org.tic.remoting.transport.netty.TransportMetrics;
 import org.tic.utils.threadpoolutils.ThreadPoolFactoryUtil;
 
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author codesssss
@@ -26,19 +31,37 @@ import java.util.concurrent.ExecutorService;
  */
 @Slf4j
 public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
+    /**
+     * a paused client that drained nothing for this many reader idle periods is taken as gone
+     */
+    private static final int MAX_PAUSED_IDLE_PERIODS = 2;
+    private static final boolean INLINE_ENABLED = ConfigResolver.getBoolean(RpcConfigEnum.SERVER_INLINE_ENABLED.getPropertyValue(), true);
+    private static final long INLINE_BUDGET_NANOS =
+            TimeUnit.MICROSECONDS.toNanos(ConfigResolver.getInt(RpcConfigEnum.SERVER_INLINE_BUDGET_MICROS.getPropertyValue(), 200));
 
     private final RpcRequestHandler rpcRequestHandler;
     private final ExecutorService bizExecutor;
     private final BackpressureLimiter limiter;
+    private final AdaptiveConcurrencyLimiter adaptiveLimiter;
     private final ServerStateManager stateManager;
     private final String poolName;
+    private final byte responseCompress;
+    /**
+     * reader idle periods in a row spent with reading paused and nothing drained, and the bytes still to drain at
+     * the last one; only touched on the channel's event loop
+     */
+    private int pausedIdlePeriods;
+    private long pausedBacklog = Long.MAX_VALUE;
 
-    public NettyRpcServerHandler(ExecutorService bizExecutor, BackpressureLimiter limiter, ServerStateManager stateManager, String poolName) {
+    public NettyRpcServerHandler(ExecutorService bizExecutor, BackpressureLimiter limiter, AdaptiveConcurrencyLimiter adaptiveLimiter,
+                                 ServerStateManager stateManager, String poolName, byte responseCompress) {
         this.rpcRequestHandler = SingletonFactory.getInstance(RpcRequestHandler.class);
         this.bizExecutor = bizExecutor;
         this.limiter = limiter;
+        this.adaptiveLimiter = adaptiveLimiter;
         this.stateManager = stateManager;
         this.poolName = poolName;
+        this.responseCompress = responseCompress;
     }
 
     @Override
@@ -48,8 +71,10 @@ public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
                 log.info("server receive msg: [{}] ", msg);
                 byte messageType = ((RpcMessage) msg).getMessageType();
                 RpcMessage rpcMessage = new RpcMessage();
-                rpcMessage.setCodec(SerializationTypeEnum.KRYO.getCode());
-                rpcMessage.setCompress(CompressTypeEnum.GZIP.getCode());
+                // respond with the serialization the client chose for this request
+                rpcMessage.setCodec(((RpcMessage) msg).getCodec());
+                rpcMessage.setRequestId(((RpcMessage) msg).getRequestId());
+                rpcMessage.setCompress(responseCompress);
                 if (messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
                     rpcMessage.setMessageType(RpcConstants.HEARTBEAT_RESPONSE_TYPE);
                     rpcMessage.setData(RpcConstants.PONG);
@@ -57,25 +82,48 @@ public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
                 } else {
                     RpcRequest rpcRequest = (RpcRequest) ((RpcMessage) msg).getData();
                     if (!stateManager.tryEnterRequest()) {
-                        log.warn("Server draining/stopped, reject request: {}", rpcRequest.getRequestId());
-                        sendOverload(ctx, rpcRequest, rpcMessage);
+                        log.warn("Server draining/stopped, reject request: {}", rpcMessage.getRequestId());
+                        sendOverload(ctx, rpcMessage, 0);
+                        return;
+                    }
+                    MethodTable.Entry method;
+                    try {
+                        method = rpcRequestHandler.resolve(rpcRequest);
+                    } catch (RuntimeException e) {
+                        stateManager.onRequestComplete();
+                        sendFailure(ctx, rpcMessage, e);
+                        return;
+                    }
+                    AdaptiveConcurrencyLimiter.Permit permit = adaptiveLimiter.tryAcquire(method);
+                    if (permit == null) {
+                        stateManager.onRequestComplete();
+                        long retryAfterMs = adaptiveLimiter.retryAfterMs(method);
+                        log.warn("Concurrency limit {} of [{}#{}] reached, retry after {}ms", adaptiveLimiter.getLimit(method),
+                                method.getRpcServiceName(), method.getMethod().getName(), retryAfterMs);
+                        sendOverload(ctx, rpcMessage, retryAfterMs);
+                        return;
+                    }
+                    if (INLINE_ENABLED && method.isNonBlocking()) {
+                        // no thread hop for a declared non-blocking method, and the executor limits do not apply to it
+                        handleRequest(ctx, rpcRequest, rpcMessage, method, permit, true);
                         return;
                     }
                     ThreadPoolFactoryUtil.ThreadPoolStats stats = ThreadPoolFactoryUtil.getThreadPoolStats(poolName);
                     int queueSize = stats == null ? 0 : stats.queueSize;
                     int inflight = stateManager.getInflight();
-                    if (!limiter.allow(inflight, queueSize)) {
+                    if (!limiter.tryAcquire(inflight, queueSize)) {
+                        permit.release(true);
                         stateManager.onRequestComplete();
                         log.warn("Backpressure triggered. inflight={}, queue={}", inflight, queueSize);
-                        sendOverload(ctx, rpcRequest, rpcMessage);
+                        sendOverload(ctx, rpcMessage, adaptiveLimiter.retryAfterMs(method));
                         return;
                     }
                     try {
-                        bizExecutor.execute(() -> handleRequest(ctx, rpcRequest, rpcMessage));
+                        bizExecutor.execute(() -> handleRequest(ctx, rpcRequest, rpcMessage, method, permit, false));
                     } catch (Exception e) {
-                        stateManager.onRequestComplete();
+                        completeRequest(permit, false, true);
                         log.error("Submit to biz executor failed", e);
-                        sendOverload(ctx, rpcRequest, rpcMessage);
+                        sendOverload(ctx, rpcMessage, adaptiveLimiter.retryAfterMs(method));
                     }
                 }
             }
@@ -85,32 +133,131 @@ public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
-    private void handleRequest(ChannelHandlerContext ctx, RpcRequest rpcRequest, RpcMessage rpcMessage) {
+    /**
+     * @param inline true when running on the IO thread, the request then holds no permit of the static limiter
+     */
+    private void handleRequest(ChannelHandlerContext ctx, RpcRequest rpcRequest, RpcMessage rpcMessage,
+                               MethodTable.Entry method, AdaptiveConcurrencyLimiter.Permit permit, boolean inline) {
+        boolean completesLater = false;
         try {
             // Execute the target method (the method the client needs to execute) and return the method result
-            Object result = rpcRequestHandler.handle(rpcRequest);
-            log.info(String.format("server get result: %s", result.toString()));
-            rpcMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
-            if (ctx.channel().isActive() && ctx.channel().isWritable()) {
-                RpcResponse<Object> rpcResponse = RpcResponse.success(result, rpcRequest.getRequestId());
-                rpcMessage.setData(rpcResponse);
-            } else {
-                RpcResponse<Object> rpcResponse = RpcResponse.fail(RpcResponseCodeEnum.FAIL);
-                rpcMessage.setData(rpcResponse);
-                log.error("not writable now, message dropped");
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = rpcRequestHandler.invoke(method, rpcRequest);
+            } finally {
+                recordExecution(method, System.nanoTime() - start, inline);
+            }
+            if (result instanceof CompletionStage) {
+                // async service method: respond once its future completes, the biz thread is released right away
+                completesLater = true;
+                ((CompletionStage<?>) result).whenComplete((value, error) -> {
+                    try {
+                        if (error != null) {
+                            sendFailure(ctx, rpcMessage, error);
+                        } else {
+                            sendResult(ctx, rpcRequest, rpcMessage, method, value);
+                        }
+                    } finally {
+                        completeRequest(permit, inline, false);
+                    }
+                });
+                return;
+            }
+            sendResult(ctx, rpcRequest, rpcMessage, method, result);
+        } catch (Throwable e) {
+            // an Error from the service method fails the call like an exception does, the client must not wait it out
+            sendFailure(ctx, rpcMessage, e);
+            if (e instanceof VirtualMachineError) {
+                throw (VirtualMachineError) e;
             }
-            ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
         } finally {
-            stateManager.onRequestComplete();
+            if (!completesLater) {
+                completeRequest(permit, inline, false);
+            }
+        }
+    }
+
+    /**
+     * Release everything a request admitted past the limiters holds, its latency feeds the adaptive limit
+     */
+    private void completeRequest(AdaptiveConcurrencyLimiter.Permit permit, boolean inline, boolean dropped) {
+        permit.release(dropped);
+        if (!inline) {
+            limiter.release();
         }
+        stateManager.onRequestComplete();
     }
 
-    private void sendOverload(ChannelHandlerContext ctx, RpcRequest rpcRequest, RpcMessage rpcMessage) {
+    /**
+     * A method run inline that takes longer than the budget is most likely not non-blocking at all,
+     * warn about it on the first such run and every 1000 after
+     */
+    private void recordExecution(MethodTable.Entry method, long elapsedNanos, boolean inline) {
+        method.getStats().record(elapsedNanos);
+        if (inline && elapsedNanos > INLINE_BUDGET_NANOS) {
+            long slowRuns = method.getStats().recordSlowInline();
+            if (slowRuns % 1000 == 1) {
+                log.warn("Non-blocking method [{}#{}] ran {}us on the IO thread, over the {}us budget ({} slow runs so far)",
+                        method.getRpcServiceName(), method.getMethod().getName(), TimeUnit.NANOSECONDS.toMicros(elapsedNanos),
+                        TimeUnit.NANOSECONDS.toMicros(INLINE_BUDGET_NANOS), slowRuns);
+            }
+        }
+    }
+
+    private void sendResult(ChannelHandlerContext ctx, RpcRequest rpcRequest, RpcMessage rpcMessage,
+                            MethodTable.Entry method, Object result) {
+        log.info("server get result: {}", result);
+        rpcMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
+        if (!ctx.channel().isActive()) {
+            log.warn("Channel [{}] closed before the response to request {} was sent", ctx.channel(), rpcMessage.getRequestId());
+            return;
+        }
+        // an unwritable channel still gets the real result: it is queued in the outbound buffer,
+        // and reading is paused until the client drains it (see channelWritabilityChanged)
+        RpcResponse<Object> rpcResponse = RpcResponse.success(result);
+        if (!rpcRequest.hasMethodRef()) {
+            // hand out the method table ids, the client switches to them for later calls
+            rpcResponse.setServiceId(method.getServiceId());
+            rpcResponse.setMethodId(method.getMethodId());
+        }
+        rpcMessage.setData(rpcResponse);
+        FlushBatcher.of(ctx.channel()).write(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+    }
+
+    private void sendFailure(ChannelHandlerContext ctx, RpcMessage rpcMessage, Throwable cause) {
+        log.error("Handle request failed", cause);
+        rpcMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
+        rpcMessage.setData(RpcResponse.fail(RpcResponseCodeEnum.FAIL));
+        FlushBatcher.of(ctx.channel()).write(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+    }
+
+    private void sendOverload(ChannelHandlerContext ctx, RpcMessage rpcMessage, long retryAfterMs) {
         rpcMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
         RpcResponse<Object> rpcResponse = RpcResponse.fail(RpcResponseCodeEnum.TOO_MANY_REQUESTS);
-        rpcResponse.setRequestId(rpcRequest.getRequestId());
+        rpcResponse.setRetryAfterMs(retryAfterMs);
         rpcMessage.setData(rpcResponse);
-        ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        FlushBatcher.of(ctx.channel()).write(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+    }
+
+    /**
+     * Throttle a client that does not read its responses: stop reading its requests while the outbound buffer is
+     * above the high water mark, and read again once it is back under the low water mark. A client that stays paused
+     * without draining anything for {@value #MAX_PAUSED_IDLE_PERIODS} reader idle periods is disconnected.
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        boolean writable = ctx.channel().isWritable();
+        if (!writable) {
+            log.warn("Channel [{}] is not writable, pause reading until its responses drain", ctx.channel());
+            TransportMetrics.recordUnwritable();
+        } else {
+            log.info("Channel [{}] is writable again, resume reading", ctx.channel());
+            pausedIdlePeriods = 0;
+            pausedBacklog = Long.MAX_VALUE;
+        }
+        ctx.channel().config().setAutoRead(writable);
+        super.channelWritabilityChanged(ctx);
     }
 
     @Override
@@ -118,6 +265,10 @@ public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
         if (evt instanceof IdleStateEvent) {
             IdleState state = ((IdleStateEvent) evt).state();
             if (state == IdleState.READER_IDLE) {
+                if (!ctx.channel().config().isAutoRead() && !stalled(ctx)) {
+                    // reading is paused by backpressure, the client is slow rather than gone
+                    return;
+                }
                 log.info("idle check happen, so close the connection");
                 ctx.close();
             }
@@ -126,6 +277,23 @@ public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * A paused client that drained none of its responses for {@value #MAX_PAUSED_IDLE_PERIODS} reader idle periods
+     * died or stopped reading; left open, its responses would stay in direct memory until TCP keepalive notices
+     */
+    private boolean stalled(ChannelHandlerContext ctx) {
+        long backlog = ctx.channel().bytesBeforeWritable();
+        if (backlog < pausedBacklog) {
+            pausedIdlePeriods = 0;
+        }
+        pausedBacklog = backlog;
+        if (++pausedIdlePeriods <= MAX_PAUSED_IDLE_PERIODS) {
+            return false;
+        }
+        log.warn("Channel [{}] drained nothing for {} idle periods while paused, closing it", ctx.channel(), pausedIdlePeriods - 1);
+        return true;
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         log.error("server catch exception");
@@ -1,6 +1,9 @@
 package org.tic.serialize;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import org.tic.extension.SPI;
+import org.tic.utils.CodecMetrics;
 
 /**
  * @author codesssss
@@ -25,4 +28,36 @@ public interface Serializer {
      * @return 反序列化的对象
      */
     <T> T deserialize(byte[] bytes, Class<T> clazz);
-}
\ No newline at end of file
+
+    /**
+     * 序列化并直接写入 ByteBuf
+     * <p>
+     * The default implementation goes through {@link #serialize(Object)} and copies the array into {@code out};
+     * implementations should override it to write into the buffer directly.
+     * </p>
+     *
+     * @param obj 要序列化的对象
+     * @param out 目标 buffer
+     */
+    default void serialize(Object obj, ByteBuf out) {
+        byte[] bytes = serialize(obj);
+        out.writeBytes(bytes);
+        CodecMetrics.recordHeapCopy(bytes.length);
+    }
+
+    /**
+     * 从 ByteBuf 的可读字节反序列化
+     *
+     * @param in    源 buffer, reader index 会越过已读取的字节
+     * @param clazz 类
+     * @param <T>
+     * @return 反序列化的对象
+     * @see #serialize(Object, ByteBuf)
+     */
+    default <T> T deserialize(ByteBuf in, Class<T> clazz) {
+        byte[] bytes = ByteBufUtil.getBytes(in);
+        in.skipBytes(bytes.length);
+        CodecMetrics.recordHeapCopy(bytes.length);
+        return deserialize(bytes, clazz);
+    }
+}
@@ -0,0 +1,78 @@
+package org.tic.serialize.hessian;
+
+import com.caucho.hessian.io.Hessian2Input;
+import com.caucho.hessian.io.Hessian2Output;
+import com.caucho.hessian.io.SerializerFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import org.tic.exception.SerializeException;
+import org.tic.serialize.Serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Hessian2 serializer, mainly for talking to non-Java peers. Payload classes must implement {@link java.io.Serializable}.
+ */
+public class HessianSerializer implements Serializer {
+
+    /**
+     * SerializerFactory caches the per-class serializers, share one across all streams
+     */
+    private static final SerializerFactory SERIALIZER_FACTORY = new SerializerFactory();
+
+    @Override
+    public byte[] serialize(Object obj) {
+        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
+            write(obj, byteArrayOutputStream);
+            return byteArrayOutputStream.toByteArray();
+        } catch (Exception e) {
+            throw new SerializeException("Serialization failed", e);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        try {
+            return read(new ByteArrayInputStream(bytes), clazz);
+        } catch (Exception e) {
+            throw new SerializeException("Deserialization failed", e);
+        }
+    }
+
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        try {
+            write(obj, new ByteBufOutputStream(out));
+        } catch (Exception e) {
+            throw new SerializeException("Serialization failed", e);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, Class<T> clazz) {
+        try {
+            return read(new ByteBufInputStream(in), clazz);
+        } catch (Exception e) {
+            throw new SerializeException("Deserialization failed", e);
+        }
+    }
+
+    private void write(Object obj, OutputStream outputStream) throws IOException {
+        Hessian2Output hessian2Output = new Hessian2Output(outputStream);
+        hessian2Output.setSerializerFactory(SERIALIZER_FACTORY);
+        hessian2Output.writeObject(obj);
+        hessian2Output.flush();
+    }
+
+    private <T> T read(InputStream inputStream, Class<T> clazz) throws IOException {
+        Hessian2Input hessian2Input = new Hessian2Input(inputStream);
+        hessian2Input.setSerializerFactory(SERIALIZER_FACTORY);
+        Object o = hessian2Input.readObject(clazz);
+        return clazz.cast(o);
+    }
+}
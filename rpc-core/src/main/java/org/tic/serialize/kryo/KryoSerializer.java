@@ -3,14 +3,16 @@ package org.tic.serialize.kryo;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.Pool;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import lombok.extern.slf4j.Slf4j;
 import org.tic.remoting.dto.RpcRequest;
 import org.tic.remoting.dto.RpcResponse;
 import org.tic.serialize.Serializer;
 import org.tic.exception.SerializeException;
-
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import org.tic.utils.RuntimeUtil;
 
 /**
  * @author codesssss
@@ -19,43 +21,111 @@ import java.io.ByteArrayOutputStream;
 @Slf4j
 public class KryoSerializer implements Serializer {
 
+    private static final int BUFFER_SIZE = 1024 * 4;
+    /**
+     * Pooled Output buffers that grew past this size are shrunk back, so one large message does not pin memory
+     */
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 64;
+    private static final int POOL_CAPACITY = Math.max(16, RuntimeUtil.cpus() * 4);
+
     /**
-     * Because Kryo is not thread safe. So, use ThreadLocal to store Kryo objects
+     * Because Kryo is not thread safe. So, borrow Kryo objects from a pool, registrations are done once per instance
      */
-    private final ThreadLocal<Kryo> kryoThreadLocal = ThreadLocal.withInitial(() -> {
-        Kryo kryo = new Kryo();
-        kryo.setRegistrationRequired(false);
-        kryo.register(RpcResponse.class);
-        kryo.register(RpcRequest.class);
-        return kryo;
-    });
+    private final Pool<Kryo> kryoPool = new Pool<Kryo>(true, false, POOL_CAPACITY) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(false);
+            kryo.register(RpcResponse.class);
+            kryo.register(RpcRequest.class);
+            return kryo;
+        }
+    };
+
+    private final Pool<Output> outputPool = new Pool<Output>(true, false, POOL_CAPACITY) {
+        @Override
+        protected Output create() {
+            return new Output(BUFFER_SIZE, -1);
+        }
+    };
+
+    private final Pool<Input> inputPool = new Pool<Input>(true, false, POOL_CAPACITY) {
+        @Override
+        protected Input create() {
+            return new Input(BUFFER_SIZE);
+        }
+    };
 
     @Override
     public byte[] serialize(Object obj) {
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-             Output output = new Output(byteArrayOutputStream)) {
-            Kryo kryo = kryoThreadLocal.get();
+        Kryo kryo = kryoPool.obtain();
+        Output output = outputPool.obtain();
+        try {
             // Object->byte:将对象序列化为byte数组
             kryo.writeObject(output, obj);
-            kryoThreadLocal.remove();
             return output.toBytes();
         } catch (Exception e) {
-            throw new SerializeException("Serialization failed");
+            throw new SerializeException("Serialization failed", e);
+        } finally {
+            releaseOutput(output);
+            kryoPool.free(kryo);
         }
     }
 
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> clazz) {
-        try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-             Input input = new Input(byteArrayInputStream)) {
-            Kryo kryo = kryoThreadLocal.get();
-            // byte->Object:从byte数组中反序列化出对对象
+        Kryo kryo = kryoPool.obtain();
+        try {
+            // byte->Object:从byte数组中反序列化出对对象, Input just wraps the array
+            Object o = kryo.readObject(new Input(bytes), clazz);
+            return clazz.cast(o);
+        } catch (Exception e) {
+            throw new SerializeException("Deserialization failed", e);
+        } finally {
+            kryoPool.free(kryo);
+        }
+    }
+
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        Kryo kryo = kryoPool.obtain();
+        Output output = outputPool.obtain();
+        try {
+            // the pooled buffer is drained into the ByteBuf whenever it fills up
+            output.setOutputStream(new ByteBufOutputStream(out));
+            kryo.writeObject(output, obj);
+            output.flush();
+        } catch (Exception e) {
+            throw new SerializeException("Serialization failed", e);
+        } finally {
+            releaseOutput(output);
+            kryoPool.free(kryo);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, Class<T> clazz) {
+        Kryo kryo = kryoPool.obtain();
+        Input input = inputPool.obtain();
+        try {
+            input.setInputStream(new ByteBufInputStream(in));
             Object o = kryo.readObject(input, clazz);
-            kryoThreadLocal.remove();
             return clazz.cast(o);
         } catch (Exception e) {
-            throw new SerializeException("Deserialization failed");
+            throw new SerializeException("Deserialization failed", e);
+        } finally {
+            input.setInputStream(null);
+            inputPool.free(input);
+            kryoPool.free(kryo);
+        }
+    }
+
+    private void releaseOutput(Output output) {
+        output.setOutputStream(null);
+        if (output.getBuffer().length > MAX_POOLED_BUFFER_SIZE) {
+            output.setBuffer(new byte[BUFFER_SIZE], -1);
         }
+        outputPool.free(output);
     }
 
-}
\ No newline at end of file
+}
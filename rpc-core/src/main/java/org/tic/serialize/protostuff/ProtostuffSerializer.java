@@ -0,0 +1,79 @@
+package org.tic.serialize.protostuff;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.protostuff.LinkedBuffer;
+import io.protostuff.ProtostuffIOUtil;
+import io.protostuff.Schema;
+import io.protostuff.runtime.RuntimeSchema;
+import org.tic.exception.SerializeException;
+import org.tic.serialize.Serializer;
+
+/**
+ * Protostuff serializer based on runtime schemas. Schemas are cached by {@link RuntimeSchema},
+ * and every thread reuses its own {@link LinkedBuffer}.
+ */
+public class ProtostuffSerializer implements Serializer {
+
+    /**
+     * LinkedBuffer is not thread safe, so keep one per thread and clear it after each use
+     */
+    private final ThreadLocal<LinkedBuffer> bufferThreadLocal =
+            ThreadLocal.withInitial(() -> LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] serialize(Object obj) {
+        Schema<Object> schema = (Schema<Object>) RuntimeSchema.getSchema(obj.getClass());
+        LinkedBuffer buffer = bufferThreadLocal.get();
+        try {
+            return ProtostuffIOUtil.toByteArray(obj, schema, buffer);
+        } catch (Exception e) {
+            throw new SerializeException("Serialization failed", e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        try {
+            Schema<T> schema = RuntimeSchema.getSchema(clazz);
+            T message = schema.newMessage();
+            ProtostuffIOUtil.mergeFrom(bytes, message, schema);
+            return message;
+        } catch (Exception e) {
+            throw new SerializeException("Deserialization failed", e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void serialize(Object obj, ByteBuf out) {
+        Schema<Object> schema = (Schema<Object>) RuntimeSchema.getSchema(obj.getClass());
+        LinkedBuffer buffer = bufferThreadLocal.get();
+        try {
+            ProtostuffIOUtil.writeTo(new ByteBufOutputStream(out), obj, schema, buffer);
+        } catch (Exception e) {
+            throw new SerializeException("Serialization failed", e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, Class<T> clazz) {
+        LinkedBuffer buffer = bufferThreadLocal.get();
+        try {
+            Schema<T> schema = RuntimeSchema.getSchema(clazz);
+            T message = schema.newMessage();
+            ProtostuffIOUtil.mergeFrom(new ByteBufInputStream(in), message, schema, buffer);
+            return message;
+        } catch (Exception e) {
+            throw new SerializeException("Deserialization failed", e);
+        } finally {
+            buffer.clear();
+        }
+    }
+}
@@ -70,7 +70,8 @@ public class SpringBeanPostProcessor implements BeanPostProcessor {
                 // Build RpcServiceConfig using the annotation's attributes
                 RpcServiceConfig rpcServiceConfig = RpcServiceConfig.builder()
                         .group(rpcReference.group())
-                        .version(rpcReference.version()).build();
+                        .version(rpcReference.version())
+                        .serialization(rpcReference.serialization()).build();
                 // Create a client proxy for the field's type
                 RpcClientProxy rpcClientProxy = new RpcClientProxy(rpcClient, rpcServiceConfig);
                 Object clientProxy = rpcClientProxy.getProxy(declaredField.getType());
@@ -0,0 +1,61 @@
+package org.tic.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the message codec: how many bodies were encoded/decoded and how many times
+ * a body was materialized as a heap byte[] on the way. Copies per message = heapCopies / (encoded + decoded).
+ */
+public final class CodecMetrics {
+
+    private static final LongAdder ENCODED = new LongAdder();
+    private static final LongAdder DECODED = new LongAdder();
+    private static final LongAdder HEAP_COPIES = new LongAdder();
+    private static final LongAdder HEAP_COPY_BYTES = new LongAdder();
+    private static final LongAdder COMPRESS_SKIPPED = new LongAdder();
+
+    private CodecMetrics() {
+    }
+
+    public static void recordEncoded() {
+        ENCODED.increment();
+    }
+
+    public static void recordDecoded() {
+        DECODED.increment();
+    }
+
+    /**
+     * Record one heap byte[] copy of a message body
+     *
+     * @param bytes size of the copied array
+     */
+    public static void recordHeapCopy(int bytes) {
+        HEAP_COPIES.increment();
+        HEAP_COPY_BYTES.add(bytes);
+    }
+
+    /**
+     * Record a body that was sent uncompressed although compression was requested
+     */
+    public static void recordCompressSkipped() {
+        COMPRESS_SKIPPED.increment();
+    }
+
+    public static Map<String, Object> snapshot() {
+        long encoded = ENCODED.sum();
+        long decoded = DECODED.sum();
+        long copies = HEAP_COPIES.sum();
+        long messages = encoded + decoded;
+        Map<String, Object> result = new HashMap<>();
+        result.put("encoded", encoded);
+        result.put("decoded", decoded);
+        result.put("heapCopies", copies);
+        result.put("heapCopyBytes", HEAP_COPY_BYTES.sum());
+        result.put("compressSkipped", COMPRESS_SKIPPED.sum());
+        result.put("copiesPerMessage", messages == 0 ? 0D : (double) copies / messages);
+        return result;
+    }
+}
@@ -0,0 +1,134 @@
+package org.tic.loadbalance;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoutingSnapshotTest {
+
+    private static RoutingSnapshot snapshot(int... weights) {
+        String[] urls = new String[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            urls[i] = "127.0.0.1:" + (9000 + i);
+        }
+        return new RoutingSnapshot(Arrays.asList(urls), weights);
+    }
+
+    private static int[] roundRobin(RoutingSnapshot snapshot, int calls) {
+        int[] sequence = new int[calls];
+        for (int i = 0; i < calls; i++) {
+            sequence[i] = snapshot.nextRoundRobin();
+        }
+        return sequence;
+    }
+
+    private static int[] counts(int[] sequence, int size) {
+        int[] counts = new int[size];
+        for (int index : sequence) {
+            counts[index]++;
+        }
+        return counts;
+    }
+
+    @Test
+    void smoothRoundRobinInterleavesInstances() {
+        // nginx's example: weights 5, 1, 1 give a a b a c a a
+        assertArrayEquals(new int[]{0, 0, 1, 0, 2, 0, 0}, roundRobin(snapshot(5, 1, 1), 7));
+    }
+
+    @Test
+    void roundRobinRepeatsItsPeriod() {
+        RoutingSnapshot snapshot = snapshot(5, 1, 1);
+        int[] first = roundRobin(snapshot, 7);
+        assertArrayEquals(first, roundRobin(snapshot, 7));
+    }
+
+    @Test
+    void roundRobinPeriodIsReducedByGcd() {
+        // 200/100/100 is 2/1/1, so every 4 calls cover each instance in proportion
+        RoutingSnapshot snapshot = snapshot(200, 100, 100);
+        for (int period = 0; period < 3; period++) {
+            assertArrayEquals(new int[]{2, 1, 1}, counts(roundRobin(snapshot, 4), 3));
+        }
+    }
+
+    @Test
+    void roundRobinScheduleIsCappedAndKeepsLightInstances() {
+        // 10001 slots do not fit in 4096, weights are scaled down but the light instance keeps one slot
+        RoutingSnapshot snapshot = snapshot(10000, 1);
+        assertArrayEquals(new int[]{4095, 1}, counts(roundRobin(snapshot, 4096), 2));
+        assertArrayEquals(new int[]{4095, 1}, counts(roundRobin(snapshot, 4096), 2));
+    }
+
+    @Test
+    void weightsBelowOneCountAsOne() {
+        RoutingSnapshot snapshot = snapshot(0, -5, 2);
+        assertEquals(1, snapshot.getWeight(0));
+        assertEquals(1, snapshot.getWeight(1));
+        assertEquals(4, snapshot.getTotalWeight());
+        assertArrayEquals(new int[]{1, 1, 2}, counts(roundRobin(snapshot, 4), 3));
+    }
+
+    @Test
+    void hugeWeightsAreScaledToAnIntTotal() {
+        RoutingSnapshot snapshot = snapshot(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE / 2, 1);
+        int total = snapshot.getTotalWeight();
+        assertTrue(total > 0, "total " + total);
+        assertEquals(snapshot.getWeight(0), snapshot.getWeight(1));
+        assertEquals(snapshot.getWeight(0) / 2, snapshot.getWeight(2), 1);
+        assertEquals(1, snapshot.getWeight(3));
+        assertEquals(3, snapshot.indexOfWeight(total - 1));
+    }
+
+    @Test
+    void indexOfWeightCoversEachRangeExactly() {
+        RoutingSnapshot snapshot = snapshot(3, 1, 2);
+        int[] expected = {0, 0, 0, 1, 2, 2};
+        assertEquals(expected.length, snapshot.getTotalWeight());
+        for (int offset = 0; offset < expected.length; offset++) {
+            assertEquals(expected[offset], snapshot.indexOfWeight(offset), "offset " + offset);
+        }
+    }
+
+    @Test
+    void indexOfWeightWithSingleInstance() {
+        RoutingSnapshot snapshot = snapshot(7);
+        for (int offset = 0; offset < 7; offset++) {
+            assertEquals(0, snapshot.indexOfWeight(offset));
+        }
+    }
+
+    @Test
+    void indexOfUnknownInstance() {
+        RoutingSnapshot snapshot = snapshot(1, 1);
+        assertEquals(1, snapshot.indexOf("127.0.0.1:9001"));
+        assertEquals(-1, snapshot.indexOf("127.0.0.1:1"));
+        assertEquals(-1, snapshot.indexOf(null));
+    }
+
+    @Test
+    void routesMatchesOnlyTheSameInstancesAndWeights() {
+        RoutingSnapshot snapshot = snapshot(3, 1);
+        List<String> serviceUrls = Arrays.asList("127.0.0.1:9000", "127.0.0.1:9001");
+        assertTrue(snapshot.routes(serviceUrls, new int[]{3, 1}));
+        assertFalse(snapshot.routes(serviceUrls, new int[]{3, 2}));
+        assertFalse(snapshot.routes(serviceUrls.subList(0, 1), new int[]{3}));
+    }
+
+    @Test
+    void serviceUrlsKeepTheirOrderAndIdentity() {
+        RoutingSnapshot snapshot = snapshot(1, 1);
+        List<String> serviceUrls = snapshot.getServiceUrls();
+        assertEquals(Arrays.asList("127.0.0.1:9000", "127.0.0.1:9001"), serviceUrls);
+        assertEquals(9001, snapshot.getAddress(1).getPort());
+        // load balancers cache per list instance, the snapshot must hand out the same one every time
+        assertSame(serviceUrls, snapshot.getServiceUrls());
+    }
+}
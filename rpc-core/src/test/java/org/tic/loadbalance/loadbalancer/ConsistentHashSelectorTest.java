@@ -0,0 +1,99 @@
+package org.tic.loadbalance.loadbalancer;
+
+import org.junit.jupiter.api.Test;
+import org.tic.loadbalance.loadbalancer.ConsistentHashLoadBalance.ConsistentHashSelector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashSelectorTest {
+
+    private static final int REPLICAS = 160;
+    private static final List<String> INVOKERS = Arrays.asList("10.0.0.1:9998", "10.0.0.2:9998", "10.0.0.3:9998");
+
+    @Test
+    void keyOnAPointGoesToItsOwner() {
+        ConsistentHashSelector selector = new ConsistentHashSelector(INVOKERS, REPLICAS);
+        for (int i = 0; i < INVOKERS.size(); i++) {
+            for (int r = 0; r < REPLICAS; r += 17) {
+                // the key hashes exactly onto this virtual node
+                assertEquals(i, selector.select(INVOKERS.get(i) + "#" + r));
+            }
+        }
+    }
+
+    @Test
+    void keyAfterTheLastPointWrapsToTheFirst() {
+        ConsistentHashSelector selector = new ConsistentHashSelector(INVOKERS, REPLICAS);
+        long lowest = Long.MAX_VALUE;
+        long highest = Long.MIN_VALUE;
+        int lowestOwner = -1;
+        for (int i = 0; i < INVOKERS.size(); i++) {
+            for (int r = 0; r < REPLICAS; r++) {
+                long point = ConsistentHashLoadBalance.hash(INVOKERS.get(i) + "#" + r);
+                if (point < lowest) {
+                    lowest = point;
+                    lowestOwner = i;
+                }
+                highest = Math.max(highest, point);
+            }
+        }
+        String key = null;
+        for (int i = 0; key == null; i++) {
+            if (ConsistentHashLoadBalance.hash("key" + i) > highest) {
+                key = "key" + i;
+            }
+        }
+        assertEquals(lowestOwner, selector.select(key));
+    }
+
+    @Test
+    void sameKeySameInstance() {
+        ConsistentHashSelector selector = new ConsistentHashSelector(INVOKERS, REPLICAS);
+        ConsistentHashSelector rebuilt = new ConsistentHashSelector(new ArrayList<>(INVOKERS), REPLICAS);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(selector.select("key" + i), rebuilt.select("key" + i));
+        }
+    }
+
+    @Test
+    void reusedRingSelectsLikeTheOriginal() {
+        ConsistentHashSelector selector = new ConsistentHashSelector(INVOKERS, REPLICAS);
+        ConsistentHashSelector reused = selector.withInvokers(new ArrayList<>(INVOKERS));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(selector.select("key" + i), reused.select("key" + i));
+        }
+    }
+
+    @Test
+    void addingAnInstanceOnlyMovesKeysToIt() {
+        List<String> grown = new ArrayList<>(INVOKERS);
+        grown.add("10.0.0.4:9998");
+        ConsistentHashSelector before = new ConsistentHashSelector(INVOKERS, REPLICAS);
+        ConsistentHashSelector after = new ConsistentHashSelector(grown, REPLICAS);
+        int keys = 10000;
+        int moved = 0;
+        for (int i = 0; i < keys; i++) {
+            int from = before.select("key" + i);
+            int to = after.select("key" + i);
+            if (from != to) {
+                assertEquals(3, to, "a key may only move to the new instance");
+                moved++;
+            }
+        }
+        // about a quarter of the keys, with room for the spread of 160 virtual nodes
+        assertTrue(moved > keys / 8 && moved < keys * 3 / 8, "moved " + moved);
+    }
+
+    @Test
+    void singleInstanceTakesEveryKey() {
+        ConsistentHashSelector selector = new ConsistentHashSelector(INVOKERS.subList(0, 1), REPLICAS);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, selector.select("key" + i));
+        }
+    }
+}
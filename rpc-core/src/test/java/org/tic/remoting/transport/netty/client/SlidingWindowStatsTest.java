@@ -0,0 +1,123 @@
+package org.tic.remoting.transport.netty.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlidingWindowStatsTest {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long BUCKET_NANOS = WINDOW_NANOS / 10;
+    private static final int LAST_INDEX = SlidingWindowStats.indexOf(Long.MAX_VALUE);
+
+    @Test
+    void smallValuesHaveOneBucketEach() {
+        for (int micros = 0; micros < 4; micros++) {
+            assertEquals(micros, SlidingWindowStats.indexOf(micros));
+            assertEquals(micros, SlidingWindowStats.valueOf(micros));
+        }
+        assertEquals(0, SlidingWindowStats.indexOf(-1));
+    }
+
+    @Test
+    void everyBucketStartsAtItsValueAndEndsBeforeTheNext() {
+        for (int index = 0; index < LAST_INDEX; index++) {
+            long start = SlidingWindowStats.valueOf(index);
+            long next = SlidingWindowStats.valueOf(index + 1);
+            assertTrue(next > start, "bucket " + index);
+            assertEquals(index, SlidingWindowStats.indexOf(start), "start of bucket " + index);
+            assertEquals(index, SlidingWindowStats.indexOf(next - 1), "end of bucket " + index);
+        }
+    }
+
+    @Test
+    void bucketsAreAtMostAQuarterWide() {
+        for (int index = 4; index < LAST_INDEX; index++) {
+            long start = SlidingWindowStats.valueOf(index);
+            long width = SlidingWindowStats.valueOf(index + 1) - start;
+            assertTrue(width * 4 <= start, "bucket " + index + " starting at " + start + " is " + width + " wide");
+        }
+    }
+
+    @Test
+    void powersOfTwoStartABucket() {
+        for (int log = 2; log < 27; log++) {
+            long value = 1L << log;
+            assertEquals(value, SlidingWindowStats.valueOf(SlidingWindowStats.indexOf(value)));
+        }
+    }
+
+    @Test
+    void slowSamplesLandInTheLastBucket() {
+        assertEquals(LAST_INDEX, SlidingWindowStats.indexOf((1L << 27) - 1));
+        assertEquals(LAST_INDEX, SlidingWindowStats.indexOf(1L << 27));
+        assertEquals(LAST_INDEX, SlidingWindowStats.indexOf(TimeUnit.HOURS.toMicros(1)));
+    }
+
+    @Test
+    void percentilesAreReadFromTheHistogram() {
+        SlidingWindowStats stats = new SlidingWindowStats(10, WINDOW_NANOS);
+        long now = WINDOW_NANOS * 5;
+        for (int i = 0; i < 90; i++) {
+            stats.record(now, TimeUnit.MICROSECONDS.toNanos(100), true);
+        }
+        for (int i = 0; i < 10; i++) {
+            stats.record(now, TimeUnit.MICROSECONDS.toNanos(10000), true);
+        }
+        SlidingWindowStats.Snapshot snapshot = stats.snapshot(now);
+        assertEquals(100, snapshot.successes);
+        assertEquals(0, snapshot.failures);
+        // reported as the start of the bucket the percentile falls into
+        assertEquals(SlidingWindowStats.valueOf(SlidingWindowStats.indexOf(100)), snapshot.p50Micros);
+        assertEquals(SlidingWindowStats.valueOf(SlidingWindowStats.indexOf(100)), snapshot.p90Micros);
+        assertEquals(SlidingWindowStats.valueOf(SlidingWindowStats.indexOf(10000)), snapshot.p99Micros);
+    }
+
+    @Test
+    void failuresCountButHaveNoLatency() {
+        SlidingWindowStats stats = new SlidingWindowStats(10, WINDOW_NANOS);
+        long now = WINDOW_NANOS;
+        stats.record(now, TimeUnit.MILLISECONDS.toNanos(5), false);
+        SlidingWindowStats.Snapshot snapshot = stats.snapshot(now);
+        assertEquals(1, snapshot.failures);
+        assertEquals(1, snapshot.total());
+        assertEquals(0, snapshot.p50Micros);
+    }
+
+    @Test
+    void recordReportsANewBucket() {
+        SlidingWindowStats stats = new SlidingWindowStats(10, WINDOW_NANOS);
+        long now = WINDOW_NANOS;
+        assertTrue(stats.record(now, 1000, true));
+        assertFalse(stats.record(now + BUCKET_NANOS - 1, 1000, true));
+        assertTrue(stats.record(now + BUCKET_NANOS, 1000, true));
+    }
+
+    @Test
+    void samplesLeaveTheWindow() {
+        SlidingWindowStats stats = new SlidingWindowStats(10, WINDOW_NANOS);
+        long start = WINDOW_NANOS;
+        stats.record(start, 1000, true);
+        stats.record(start + BUCKET_NANOS, 1000, false);
+        assertEquals(2, stats.snapshot(start + WINDOW_NANOS - 1).total());
+        // the first bucket is out of the window, nothing was recorded into its slot since
+        assertEquals(1, stats.snapshot(start + WINDOW_NANOS).total());
+        assertEquals(0, stats.snapshot(start + WINDOW_NANOS + BUCKET_NANOS).total());
+    }
+
+    @Test
+    void reusedBucketForgetsItsOldSamples() {
+        SlidingWindowStats stats = new SlidingWindowStats(10, WINDOW_NANOS);
+        long start = WINDOW_NANOS;
+        stats.record(start, 1000, false);
+        // same slot of the ring, one full window later
+        assertTrue(stats.record(start + WINDOW_NANOS, 1000, true));
+        SlidingWindowStats.Snapshot snapshot = stats.snapshot(start + WINDOW_NANOS);
+        assertEquals(1, snapshot.successes);
+        assertEquals(0, snapshot.failures);
+    }
+}
@@ -0,0 +1,71 @@
+package org.tic.remoting.transport.netty.client;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import org.tic.exception.RpcException;
+import org.tic.remoting.dto.RpcResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UnprocessedRequestsTest {
+
+    private final UnprocessedRequests unprocessedRequests = new UnprocessedRequests();
+
+    @Test
+    void responseCompletesItsRequest() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        CompletableFuture<RpcResponse<Object>> future = new CompletableFuture<>();
+        int requestId = unprocessedRequests.put(channel, future);
+        assertEquals(1, unprocessedRequests.getPendingCount(channel));
+        RpcResponse<Object> response = RpcResponse.success("ok");
+        unprocessedRequests.complete(channel, requestId, response);
+        assertSame(response, future.get());
+        assertEquals(0, unprocessedRequests.getPendingCount(channel));
+    }
+
+    @Test
+    void closeFailsPendingRequests() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        CompletableFuture<RpcResponse<Object>> future = new CompletableFuture<>();
+        unprocessedRequests.put(channel, future);
+        RpcException cause = new RpcException("Connection closed");
+        unprocessedRequests.failAll(channel, cause);
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertSame(cause, e.getCause());
+    }
+
+    @Test
+    void requestOnAClosedChannelFailsAndIsNotKept() {
+        int pendingBefore = unprocessedRequests.getPendingCount();
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.close();
+        // what the close handler does, before the request gets there
+        unprocessedRequests.failAll(channel, new RpcException("Connection closed"));
+        CompletableFuture<RpcResponse<Object>> future = new CompletableFuture<>();
+        unprocessedRequests.put(channel, future);
+        assertTrue(future.isCompletedExceptionally());
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertTrue(e.getCause() instanceof RpcException);
+        assertEquals(0, unprocessedRequests.getPendingCount(channel));
+        assertEquals(pendingBefore, unprocessedRequests.getPendingCount());
+    }
+
+    @Test
+    void requestAfterFailAllOnTheSameRegistrationFails() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        CompletableFuture<RpcResponse<Object>> first = new CompletableFuture<>();
+        unprocessedRequests.put(channel, first);
+        channel.close();
+        unprocessedRequests.failAll(channel, new RpcException("Connection closed"));
+        CompletableFuture<RpcResponse<Object>> second = new CompletableFuture<>();
+        unprocessedRequests.put(channel, second);
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+    }
+}
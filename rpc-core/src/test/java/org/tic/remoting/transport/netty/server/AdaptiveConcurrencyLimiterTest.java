@@ -0,0 +1,169 @@
+package org.tic.remoting.transport.netty.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final Object METHOD = "echo";
+    private static final long FAST = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private long now = 1;
+    /**
+     * run once on the next clock read, lets a test act while a sample is being applied
+     */
+    private Runnable onNextRead;
+    private final LongSupplier clock = () -> {
+        Runnable action = onNextRead;
+        onNextRead = null;
+        if (action != null) {
+            action.run();
+        }
+        return now;
+    };
+
+    private AdaptiveConcurrencyLimiter limiter(int min, int initial, int max) {
+        return new AdaptiveConcurrencyLimiter(true, min, initial, max, clock);
+    }
+
+    /**
+     * fills the method up to its limit, lets rtt pass and completes every request
+     */
+    private void saturate(AdaptiveConcurrencyLimiter limiter, long rttNanos) {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        AdaptiveConcurrencyLimiter.Permit permit;
+        while ((permit = limiter.tryAcquire(METHOD)) != null) {
+            permits.add(permit);
+        }
+        now += rttNanos;
+        permits.forEach(p -> p.release(false));
+    }
+
+    private void drop(AdaptiveConcurrencyLimiter limiter) {
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire(METHOD);
+        now += FAST;
+        permit.release(true);
+    }
+
+    @Test
+    void rejectsAtTheLimitUntilAPermitIsReleased() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 3, 1000);
+        limiter.tryAcquire(METHOD);
+        limiter.tryAcquire(METHOD);
+        AdaptiveConcurrencyLimiter.Permit last = limiter.tryAcquire(METHOD);
+        assertNull(limiter.tryAcquire(METHOD));
+        now += FAST;
+        last.release(false);
+        assertNotNull(limiter.tryAcquire(METHOD));
+    }
+
+    @Test
+    void growsWhileLatencyStaysAtNoLoad() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 20, 1000);
+        int previous = limiter.getLimit(METHOD);
+        for (int round = 0; round < 5; round++) {
+            saturate(limiter, FAST);
+            int limit = limiter.getLimit(METHOD);
+            assertTrue(limit > Math.max(previous, 20), "round " + round + ": " + previous + " -> " + limit);
+            previous = limit;
+        }
+    }
+
+    @Test
+    void growthStopsAtMax() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 20, 40);
+        for (int round = 0; round < 10; round++) {
+            saturate(limiter, FAST);
+        }
+        assertEquals(40, limiter.getLimit(METHOD));
+    }
+
+    @Test
+    void requestsFarBelowTheLimitDoNotMoveIt() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 20, 1000);
+        for (int i = 0; i < 100; i++) {
+            AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire(METHOD);
+            now += SLOW;
+            permit.release(false);
+        }
+        assertEquals(20, limiter.getLimit(METHOD));
+    }
+
+    @Test
+    void shrinksOnceLatencyQueuesUp() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 20, 1000);
+        saturate(limiter, FAST);
+        int grown = limiter.getLimit(METHOD);
+        for (int round = 0; round < 10; round++) {
+            saturate(limiter, SLOW);
+        }
+        assertTrue(limiter.getLimit(METHOD) < 20, grown + " -> " + limiter.getLimit(METHOD));
+    }
+
+    @Test
+    void jitterAboveNoLoadLatencyIsNotQueueing() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 20, 1000);
+        saturate(limiter, FAST);
+        int limit = limiter.getLimit(METHOD);
+        // several times the no-load latency but within 1ms of it
+        saturate(limiter, FAST * 8);
+        assertTrue(limiter.getLimit(METHOD) > limit);
+    }
+
+    @Test
+    void dropsShrinkTheLimitDownToTheFloor() {
+        AdaptiveConcurrencyLimiter limiter = limiter(5, 20, 1000);
+        drop(limiter);
+        assertEquals(19, limiter.getLimit(METHOD));
+        for (int i = 0; i < 100; i++) {
+            drop(limiter);
+        }
+        assertEquals(5, limiter.getLimit(METHOD));
+    }
+
+    @Test
+    void initialLimitIsKeptWithinMinAndMax() {
+        AdaptiveConcurrencyLimiter belowMin = limiter(10, 2, 1000);
+        belowMin.tryAcquire(METHOD);
+        assertEquals(10, belowMin.getLimit(METHOD));
+        AdaptiveConcurrencyLimiter aboveMax = limiter(2, 50, 30);
+        aboveMax.tryAcquire(METHOD);
+        assertEquals(30, aboveMax.getLimit(METHOD));
+    }
+
+    @Test
+    void sampleCompletingDuringAnUpdateIsSkipped() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 20, 1000);
+        AdaptiveConcurrencyLimiter.Permit applied = limiter.tryAcquire(METHOD);
+        AdaptiveConcurrencyLimiter.Permit skipped = limiter.tryAcquire(METHOD);
+        now += FAST;
+        // the drop would shrink the limit, but it completes while the first sample holds the update
+        onNextRead = () -> skipped.release(true);
+        applied.release(false);
+        assertEquals(20, limiter.getLimit(METHOD));
+        // the skipped request still gave its slot back
+        for (int i = 0; i < 20; i++) {
+            assertNotNull(limiter.tryAcquire(METHOD), "permit " + i);
+        }
+        assertNull(limiter.tryAcquire(METHOD));
+    }
+
+    @Test
+    void disabledAdmitsEverything() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(false, 1, 1, 1, clock);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire(METHOD);
+        assertSame(first, limiter.tryAcquire(METHOD));
+        assertEquals(-1, limiter.getLimit(METHOD));
+    }
+}
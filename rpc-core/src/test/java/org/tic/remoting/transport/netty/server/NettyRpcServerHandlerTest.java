@@ -0,0 +1,98 @@
+package org.tic.remoting.transport.netty.server;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.tic.annotation.NonBlocking;
+import org.tic.config.RpcServiceConfig;
+import org.tic.enums.RpcResponseCodeEnum;
+import org.tic.factory.SingletonFactory;
+import org.tic.provider.impl.ZkServiceProviderImpl;
+import org.tic.remoting.constants.RpcConstants;
+import org.tic.remoting.dto.RpcMessage;
+import org.tic.remoting.dto.RpcRequest;
+import org.tic.remoting.dto.RpcResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NettyRpcServerHandlerTest {
+
+    public interface CheckService {
+        String check();
+
+        @NonBlocking
+        String checkInline();
+    }
+
+    public static class FailingCheckService implements CheckService {
+        @Override
+        public String check() {
+            throw new AssertionError("broken invariant");
+        }
+
+        @Override
+        public String checkInline() {
+            throw new AssertionError("broken invariant");
+        }
+    }
+
+    @BeforeAll
+    static void registerService() {
+        RpcServiceConfig config = new RpcServiceConfig();
+        config.setService(new FailingCheckService());
+        SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(config);
+    }
+
+    private static EmbeddedChannel channel() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        // the channel's own event loop doubles as the business executor, runPendingTasks runs both
+        channel.pipeline().addLast(new NettyRpcServerHandler(channel.eventLoop(), new BackpressureLimiter(100, 100),
+                new AdaptiveConcurrencyLimiter(true, 2, 20, 1000), new ServerStateManager(), "test", (byte) 0));
+        return channel;
+    }
+
+    private static RpcMessage request(int requestId, String methodName) {
+        RpcRequest rpcRequest = RpcRequest.builder()
+                .interfaceName(CheckService.class.getCanonicalName())
+                .methodName(methodName)
+                .parameters(new Object[0])
+                .paramTypes(new Class<?>[0])
+                .group("")
+                .version("")
+                .build();
+        RpcMessage rpcMessage = new RpcMessage();
+        rpcMessage.setMessageType(RpcConstants.REQUEST_TYPE);
+        rpcMessage.setRequestId(requestId);
+        rpcMessage.setData(rpcRequest);
+        return rpcMessage;
+    }
+
+    private static RpcResponse<?> response(EmbeddedChannel channel, int requestId) {
+        channel.runPendingTasks();
+        RpcMessage rpcMessage = channel.readOutbound();
+        assertNotNull(rpcMessage, "no response to request " + requestId);
+        assertEquals(requestId, rpcMessage.getRequestId());
+        return (RpcResponse<?>) rpcMessage.getData();
+    }
+
+    @Test
+    void errorFromTheMethodFailsTheCall() {
+        EmbeddedChannel channel = channel();
+        channel.writeInbound(request(1, "check"));
+        assertEquals(RpcResponseCodeEnum.FAIL.getCode(), response(channel, 1).getCode());
+        assertTrue(channel.isActive());
+    }
+
+    @Test
+    void errorFromAnInlineMethodFailsTheCallAndKeepsTheConnection() {
+        EmbeddedChannel channel = channel();
+        channel.writeInbound(request(1, "checkInline"));
+        assertEquals(RpcResponseCodeEnum.FAIL.getCode(), response(channel, 1).getCode());
+        // other calls in flight on the same connection are unaffected
+        assertTrue(channel.isActive());
+        channel.writeInbound(request(2, "checkInline"));
+        assertEquals(RpcResponseCodeEnum.FAIL.getCode(), response(channel, 2).getCode());
+    }
+}